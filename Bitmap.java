@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** An immutable set of small non-negative integers, compressed in the
+ *  manner of EWAH.  The bits are grouped into 64-bit words, and the words
+ *  are stored as a sequence of markers, each followed by literal words.
+ *  A marker says that a run of some number of all-zero or all-one words
+ *  comes next, followed by its count of literal words.  Long runs of
+ *  commits that are all reachable or all unreachable thus cost one
+ *  word.
+ *  @author athmiha bhaskaran
+ */
+class Bitmap {
+
+    /** An empty bitmap. */
+    static final Bitmap EMPTY = new Builder().build();
+
+    /** Bits of a marker holding its run length. */
+    private static final long RUN_MASK = 0xffffffffL;
+
+    /** Bit of a marker holding the value of its run. */
+    private static final long RUN_BIT = 1L << 32;
+
+    /** Shift of the literal count within a marker. */
+    private static final int LITERAL_SHIFT = 33;
+
+    /** Builds a Bitmap one uncompressed word at a time. */
+    static class Builder {
+        /** Append WORD as the next 64 bits. */
+        Builder add(long word) {
+            if (word == 0 || word == -1) {
+                boolean bit = word == -1;
+                if (_marker < 0 || literals(_words[_marker]) > 0
+                    || runBit(_words[_marker]) != bit
+                    || runLength(_words[_marker]) == RUN_MASK) {
+                    newMarker(bit);
+                }
+                _words[_marker] += 1;
+            } else {
+                if (_marker < 0
+                    || literals(_words[_marker]) == (1L << 30)) {
+                    newMarker(false);
+                }
+                _words[_marker] += 1L << LITERAL_SHIFT;
+                push(word);
+            }
+            return this;
+        }
+
+        /** Returns the bitmap built so far. */
+        Bitmap build() {
+            return new Bitmap(Arrays.copyOf(_words, _size));
+        }
+
+        /** Start a new marker with run value BIT and nothing in it. */
+        private void newMarker(boolean bit) {
+            _marker = _size;
+            push(bit ? RUN_BIT : 0);
+        }
+
+        /** Append W to the compressed words. */
+        private void push(long w) {
+            if (_size == _words.length) {
+                _words = Arrays.copyOf(_words, 2 * _words.length);
+            }
+            _words[_size] = w;
+            _size += 1;
+        }
+
+        /** Compressed words. */
+        private long[] _words = new long[4];
+        /** Number of compressed words in use. */
+        private int _size;
+        /** Index of the current marker, or -1. */
+        private int _marker = -1;
+    }
+
+    /** Returns a bitmap containing exactly BITS, given in increasing
+     *  order. */
+    static Bitmap of(int... bits) {
+        Builder result = new Builder();
+        long word = 0;
+        int wordNum = 0;
+        for (int b : bits) {
+            while (b / 64 > wordNum) {
+                result.add(word);
+                word = 0;
+                wordNum += 1;
+            }
+            word |= 1L << (b % 64);
+        }
+        if (bits.length > 0) {
+            result.add(word);
+        }
+        return result.build();
+    }
+
+    /** Returns the bitmap stored in BYTES by toBytes. */
+    static Bitmap fromBytes(byte[] bytes) {
+        long[] words = new long[bytes.length / 8];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(words);
+        return new Bitmap(words);
+    }
+
+    /** A bitmap with compressed words WORDS. */
+    private Bitmap(long[] words) {
+        _words = words;
+    }
+
+    /** Returns the compressed form of this bitmap. */
+    byte[] toBytes() {
+        ByteBuffer result = ByteBuffer.allocate(8 * _words.length);
+        result.asLongBuffer().put(_words);
+        return result.array();
+    }
+
+    /** Returns the union of this set and OTHER. */
+    Bitmap or(Bitmap other) {
+        return combine(other, false);
+    }
+
+    /** Returns the members of this set that are not in OTHER. */
+    Bitmap andNot(Bitmap other) {
+        return combine(other, true);
+    }
+
+    /** Returns true iff this set has no members. */
+    boolean isEmpty() {
+        Words w = new Words();
+        while (w.hasNext()) {
+            if (w.next() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns this OR OTHER, or this AND NOT OTHER if ANDNOT. */
+    private Bitmap combine(Bitmap other, boolean andNot) {
+        Builder result = new Builder();
+        Words a = new Words(), b = other.new Words();
+        while (a.hasNext() || b.hasNext()) {
+            long x = a.hasNext() ? a.next() : 0;
+            long y = b.hasNext() ? b.next() : 0;
+            result.add(andNot ? x & ~y : x | y);
+        }
+        return result.build();
+    }
+
+    /** Iterates over the uncompressed words of this bitmap. */
+    private class Words {
+        /** Returns true iff there are more words. */
+        boolean hasNext() {
+            skipEmptyMarkers();
+            return _k < _words.length;
+        }
+
+        /** Returns the next word. */
+        long next() {
+            skipEmptyMarkers();
+            long m = _words[_k];
+            long result;
+            if (_inRun < runLength(m)) {
+                result = runBit(m) ? -1 : 0;
+                _inRun += 1;
+            } else {
+                result = _words[_k + 1 + _inLiterals];
+                _inLiterals += 1;
+            }
+            return result;
+        }
+
+        /** Move past markers that have nothing left. */
+        private void skipEmptyMarkers() {
+            while (_k < _words.length
+                   && _inRun == runLength(_words[_k])
+                   && _inLiterals == literals(_words[_k])) {
+                _k += 1 + _inLiterals;
+                _inRun = 0;
+                _inLiterals = 0;
+            }
+        }
+
+        /** Index of the current marker. */
+        private int _k;
+        /** Run words of the current marker already returned. */
+        private long _inRun;
+        /** Literal words of the current marker already returned. */
+        private int _inLiterals;
+    }
+
+    /** Returns the run length of marker M. */
+    private static long runLength(long m) {
+        return m & RUN_MASK;
+    }
+
+    /** Returns the run value of marker M. */
+    private static boolean runBit(long m) {
+        return (m & RUN_BIT) != 0;
+    }
+
+    /** Returns the number of literal words after marker M. */
+    private static long literals(long m) {
+        return m >>> LITERAL_SHIFT;
+    }
+
+    /** Compressed words: markers, each followed by its literals. */
+    private final long[] _words;
+}
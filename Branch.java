@@ -1,10 +1,26 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.Serializable;
-
-public class Branch implements Serializable {
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A branch: a name and the commit at its tip.  Each branch is stored as
+ *  a ref, a small text file in the branches folder named after the branch
+ *  and holding the id of its tip.  The HEAD file is a symbolic ref that
+ *  names the current branch, so finding the current branch or the tip of
+ *  any branch reads one small file.
+ *
+ *  pack-refs moves every ref into the packed-refs file, one line of tip
+ *  id and name per branch, sorted by name.  It is read once per run and
+ *  binary-searched.  A loose ref overrides a packed one of the same name,
+ *  so moving a branch only ever writes its loose ref.
+ *  @author athmiha bhaskaran
+ */
+public class Branch {
 
     /** Current Working Directory. */
     static final File CWD = new File(System.getProperty("user.dir"));
@@ -12,46 +28,196 @@ public class Branch implements Serializable {
     /** GITLET REPOSITORY folder. */
     static final File GITLET = Utils.join(CWD, ".gitlet");
 
-    /** STAGING AREA folder. */
-    static final File STAGING_AREA = Utils.join(GITLET, "staging_area");
-
-    /** STAGING FOR ADDITION folder. */
-    static final File STAGED_ADDITION = Utils.join(STAGING_AREA,
-            "staged_addition");
-
-    /** STAGING FOR REMOVAL folder. */
-    static final File STAGED_RM = Utils.join(STAGING_AREA, "staged_rm");
-
-    /** COMMITS folder. */
-    static final File COMMITS = Utils.join(GITLET, "commits");
+    /** HEAD symbolic ref. */
+    static final File HEAD = Utils.join(GITLET, "HEAD");
 
-    /** HEAD folder. */
-    static final File HEAD = Utils.join(GITLET, "head");
-
-    /** BLOBS folder. */
-    static final File BLOBS = Utils.join(GITLET, "blobs");
     /** BRANCHES folder. */
     static final File BRANCHES = Utils.join(GITLET, "branches");
 
+    /** Packed refs file. */
+    static final File PACKED = Utils.join(GITLET, "packed-refs");
+
+    /** Prefix of the contents of HEAD. */
+    private static final String SYMREF = "ref: ";
+
     /** isActive var. */
     private boolean _isActive;
 
     /** name var. */
     private String _name;
 
-    /** commit var. */
+    /** id of the tip commit. */
+    private String _commitId;
+
+    /** commit var, read on first use. */
     private Commit _commit;
 
+    /** Names of the packed refs, in order, or null if not yet read. */
+    private static String[] _packedNames;
+
+    /** Tips of the packed refs, in the order of _packedNames. */
+    private static String[] _packedIds;
+
     public Branch(String name, boolean isActive, Commit c) {
         _isActive = isActive;
         _name = name;
         _commit = c;
-        String fileName = _name;
-        String sha1Commit = Utils.sha1(Utils.serialize(c));
-        if (name.equals("master")) {
-            sha1Commit = Utils.sha1(Utils.serialize(HEAD));
+        _commitId = c.getId();
+    }
+
+    /** A branch named NAME whose tip is commit ID. */
+    private Branch(String name, String id) {
+        _name = name;
+        _commitId = id;
+        _isActive = name.equals(current());
+    }
+
+    /** Returns the branch named NAME, or null if there is none. */
+    static Branch load(String name) {
+        String id = tip(name);
+        return id == null ? null : new Branch(name, id);
+    }
+
+    /** Returns the id of the tip of branch NAME, or null if there is no
+     *  such branch. */
+    static String tip(String name) {
+        File f = Utils.join(BRANCHES, name);
+        if (!f.isFile()) {
+            return packedTip(name);
+        }
+        return Utils.readContentsAsString(f).trim();
+    }
+
+    /** Returns true iff there is a branch named NAME. */
+    static boolean exists(String name) {
+        return Utils.join(BRANCHES, name).isFile()
+            || packedTip(name) != null;
+    }
+
+    /** Returns the names of all branches, in order. */
+    static List<String> names() {
+        readPacked();
+        String[] loose = looseNames();
+        if (loose == null || loose.length == 0) {
+            return Arrays.asList(_packedNames);
+        }
+        TreeSet<String> result = new TreeSet<>(Arrays.asList(_packedNames));
+        result.addAll(Arrays.asList(loose));
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the name of the current branch. */
+    static String current() {
+        return Utils.readContentsAsString(HEAD).trim()
+            .substring(SYMREF.length());
+    }
+
+    /** Make NAME the current branch. */
+    static void setCurrent(String name) {
+        Utils.writeContents(HEAD, SYMREF + name + "\n");
+    }
+
+    /** Returns the commit at the tip of the current branch. */
+    static Commit head() {
+        return Commit.load(tip(current()));
+    }
+
+    /** Move the current branch to commit ID. */
+    static void advance(String id) {
+        new Branch(current(), id).branchSave();
+    }
+
+    /** Remove branch NAME. */
+    static void delete(String name) {
+        Utils.join(BRANCHES, name).delete();
+        if (packedTip(name) != null) {
+            TreeMap<String, String> packed = packed();
+            packed.remove(name);
+            writePacked(packed);
+        }
+        Main.BITMAPS.delete(name);
+    }
+
+    /** Move every loose ref into the packed-refs file. */
+    static void pack() {
+        TreeMap<String, String> refs = packed();
+        String[] loose = looseNames();
+        if (loose != null) {
+            for (String name : loose) {
+                refs.put(name, tip(name));
+            }
+        }
+        writePacked(refs);
+        if (loose != null) {
+            for (String name : loose) {
+                Utils.join(BRANCHES, name).delete();
+            }
+        }
+    }
+
+    /** Returns the names of the loose refs, or null if there is no
+     *  branches folder.  Hidden files, such as temporary files left by an
+     *  older version, are not refs. */
+    private static String[] looseNames() {
+        return BRANCHES.list((dir, name) -> !name.startsWith("."));
+    }
+
+    /** Forget the packed refs read so far, so that the next use reads the
+     *  packed-refs file again. */
+    static void reload() {
+        _packedNames = null;
+        _packedIds = null;
+    }
+
+    /** Returns the tip of the packed ref NAME, or null if there is none. */
+    private static String packedTip(String name) {
+        readPacked();
+        int k = Arrays.binarySearch(_packedNames, name);
+        return k < 0 ? null : _packedIds[k];
+    }
+
+    /** Returns the packed refs, as a map from name to tip. */
+    private static TreeMap<String, String> packed() {
+        readPacked();
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int k = 0; k < _packedNames.length; k += 1) {
+            result.put(_packedNames[k], _packedIds[k]);
+        }
+        return result;
+    }
+
+    /** Read the packed-refs file, if it has not been read already. */
+    private static void readPacked() {
+        if (_packedNames != null) {
+            return;
+        }
+        String[] lines = PACKED.isFile()
+            ? Utils.readContentsAsString(PACKED).split("\n") : new String[0];
+        ArrayList<String> names = new ArrayList<>(lines.length);
+        ArrayList<String> ids = new ArrayList<>(lines.length);
+        for (String line : lines) {
+            int sp = line.indexOf(' ');
+            if (sp > 0) {
+                ids.add(line.substring(0, sp));
+                names.add(line.substring(sp + 1));
+            }
+        }
+        _packedNames = names.toArray(new String[0]);
+        _packedIds = ids.toArray(new String[0]);
+    }
+
+    /** Replace the packed-refs file with REFS, a map from name to tip. */
+    private static void writePacked(TreeMap<String, String> refs) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> e : refs.entrySet()) {
+            out.append(e.getValue()).append(' ').append(e.getKey())
+                .append('\n');
         }
+        Utils.writeContents(PACKED, out.toString());
+        _packedNames = null;
+        _packedIds = null;
     }
+
     public boolean getActive() {
         return _isActive;
     }
@@ -59,28 +225,23 @@ public class Branch implements Serializable {
         return _name;
     }
     public Commit getCommit() {
+        if (_commit == null) {
+            _commit = Commit.load(_commitId);
+        }
         return _commit;
     }
-    public void falseActive() {
-        _isActive = false;
-    }
-    public void trueActive() {
-        _isActive = true;
-    }
-    public void commitSetter(File a) {
-        _commit = Utils.readObject(a, Commit.class);
+    public String getCommitId() {
+        return _commitId;
     }
     public void commitSetter1(Commit a) {
         _commit = a;
+        _commitId = a.getId();
     }
 
-
-
-
-    public void branchSave() throws IOException {
-        File d = Utils.join(BRANCHES, this._name);
-        d.createNewFile();
-        Utils.writeObject(d, this);
+    public void branchSave() {
+        BRANCHES.mkdirs();
+        Utils.writeContents(Utils.join(BRANCHES, _name), _commitId + "\n");
+        Main.BITMAPS.update(_name, _commitId);
     }
 
 
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** For each branch, a Bitmap of the positions in the CommitGraph of all
+ *  commits reachable from the branch's tip.  Each is stored in its own
+ *  file, headed by the binary id of the tip it describes.  When a branch
+ *  moves to a new commit, its bitmap is the union of its parents'
+ *  bitmaps plus the new commit, so a normal commit costs one OR rather
+ *  than a walk of the history.  Ancestry between branch tips is then a
+ *  bitwise test.
+ *  @author athmiha bhaskaran
+ */
+class BranchBitmaps {
+
+    /** Length in bytes of a binary commit id. */
+    private static final int ID_SIZE = ObjectIndex.ID_SIZE;
+
+    /** Bitmaps kept in DIR over the positions in GRAPH. */
+    BranchBitmaps(File dir, CommitGraph graph) {
+        _dir = dir;
+        _graph = graph;
+    }
+
+    /** Returns the commits reachable from BRANCH, whose tip is TIP. */
+    Bitmap reachable(String branch, String tip) {
+        return update(branch, tip);
+    }
+
+    /** Record that BRANCH now points at commit TIP, and return the
+     *  commits reachable from it. */
+    Bitmap update(String branch, String tip) {
+        HashMap<String, byte[]> stored = new HashMap<>();
+        load(branch, stored);
+        if (stored.containsKey(tip)) {
+            return Bitmap.fromBytes(body(stored.get(tip)));
+        }
+        load(Branch.current(), stored);
+        Bitmap result = forCommit(tip, stored);
+        _dir.mkdirs();
+        Utils.writeContents(file(branch), Utils.fromHex(tip),
+                            result.toBytes());
+        return result;
+    }
+
+    /** Forget the bitmap of BRANCH. */
+    void delete(String branch) {
+        file(branch).delete();
+    }
+
+    /** Add the bitmap file of BRANCH, if there is one, to STORED, a map
+     *  from tip id to bitmap file contents. */
+    private void load(String branch, HashMap<String, byte[]> stored) {
+        File f = file(branch);
+        if (f.isFile()) {
+            byte[] contents = Utils.readContents(f);
+            stored.put(tip(contents), contents);
+        }
+    }
+
+    /** Add the bitmap file of a branch whose tip is ID, if there is one,
+     *  to STORED, as for load(). */
+    private void loadTip(String id, HashMap<String, byte[]> stored) {
+        for (String name : Branch.names()) {
+            if (id.equals(Branch.tip(name))) {
+                load(name, stored);
+                if (stored.containsKey(id)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Returns the commits reachable from commit ID, reusing a bitmap in
+     *  STORED, a map from tip id to bitmap file contents, for ID or for
+     *  its parents where there is one.  A branch that moves or is made
+     *  almost always starts from its own old tip or from the current
+     *  branch's, which the caller has read.  A parent that is in neither,
+     *  such as the tip of the branch a merge brings in, is looked for
+     *  among the other branches' tips before walking the graph. */
+    private Bitmap forCommit(String id, HashMap<String, byte[]> stored) {
+        if (stored.containsKey(id)) {
+            return Bitmap.fromBytes(body(stored.get(id)));
+        }
+        int pos = _graph.position(id);
+        Bitmap result = Bitmap.of(pos);
+        for (int p : new int[] {_graph.parent(pos),
+                                _graph.commitParent(pos)}) {
+            if (p == CommitGraph.NONE) {
+                continue;
+            }
+            String parentId = _graph.id(p);
+            if (!stored.containsKey(parentId)) {
+                loadTip(parentId, stored);
+            }
+            byte[] parent = stored.get(parentId);
+            result = result.or(parent != null
+                               ? Bitmap.fromBytes(body(parent)) : walk(p));
+        }
+        return result;
+    }
+
+    /** Returns the commits reachable from position START, found by
+     *  walking the graph. */
+    private Bitmap walk(int start) {
+        boolean[] seen = new boolean[_graph.size()];
+        int[] todo = new int[_graph.size()];
+        int n = 0;
+        todo[n++] = start;
+        seen[start] = true;
+        while (n > 0) {
+            int pos = todo[--n];
+            for (int p : new int[] {_graph.parent(pos),
+                                    _graph.commitParent(pos)}) {
+                if (p != CommitGraph.NONE && !seen[p]) {
+                    seen[p] = true;
+                    todo[n++] = p;
+                }
+            }
+        }
+        Bitmap.Builder result = new Bitmap.Builder();
+        for (int w = 0; w * 64 < seen.length; w += 1) {
+            long word = 0;
+            for (int b = 0; b < 64 && w * 64 + b < seen.length; b += 1) {
+                if (seen[w * 64 + b]) {
+                    word |= 1L << b;
+                }
+            }
+            result.add(word);
+        }
+        return result.build();
+    }
+
+    /** Returns the file holding the bitmap of BRANCH. */
+    private File file(String branch) {
+        return Utils.join(_dir, branch);
+    }
+
+    /** Returns the tip id at the head of bitmap file CONTENTS. */
+    private static String tip(byte[] contents) {
+        return Utils.toHex(Arrays.copyOf(contents, ID_SIZE));
+    }
+
+    /** Returns the bitmap part of bitmap file CONTENTS. */
+    private static byte[] body(byte[] contents) {
+        return Arrays.copyOfRange(contents, ID_SIZE, contents.length);
+    }
+
+    /** Directory holding one bitmap file per branch. */
+    private final File _dir;
+
+    /** The graph whose positions the bitmaps use. */
+    private final CommitGraph _graph;
+}
@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** A thin client for the gitlet daemon.  Running
+ *      java gitlet.Client ARGS
+ *  sends ARGS to the daemon of the repository in the current directory
+ *  and prints its reply, or runs the command itself if no daemon is
+ *  listening.
+ *  @author athmiha bhaskaran
+ */
+public class Client {
+
+    /** Current Working Directory. */
+    static final File CWD = new File(System.getProperty("user.dir"));
+
+    /** Socket on which the daemon listens. */
+    static final File SOCKET = Utils.join(CWD, ".gitlet", "daemon.sock");
+
+    /** Run the command ARGS, through the daemon if there is one. */
+    public static void main(String... args) throws IOException {
+        SocketChannel ch = connect();
+        if (ch == null) {
+            Main.main(args);
+            return;
+        }
+        int status = forward(ch, args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Send ARGS to the daemon on CH, print its reply, close CH and
+     *  return the command's exit status. */
+    static int forward(SocketChannel ch, String... args) throws IOException {
+        int status;
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(ch));
+            status = in.readInt();
+            byte[] stdout = new byte[in.readInt()];
+            in.readFully(stdout);
+            byte[] stderr = new byte[in.readInt()];
+            in.readFully(stderr);
+            System.out.write(stdout);
+            System.out.flush();
+            System.err.write(stderr);
+            System.err.flush();
+        }
+        return status;
+    }
+
+    /** Returns a channel connected to the daemon, or null if no daemon is
+     *  listening. */
+    static SocketChannel connect() {
+        if (!SOCKET.exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(
+                UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
@@ -3,10 +3,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Date;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.TreeMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 public class Commit implements Serializable {
 
+    /** Format of commit timestamps. */
+    static final String DATE_PATTERN = "EEE MMM d HH:mm:ss yyyy Z";
 
     /** message var. */
     private String _message;
@@ -14,11 +20,14 @@ public class Commit implements Serializable {
     /** date. */
     private String _date;
 
-    /** parent. */
-    private Commit _parent;
+    /** SHA-1 id of the parent, or null for the initial commit. */
+    private String _parentId;
 
-    /** commitParent. */
-    private Commit _commitParent;
+    /** SHA-1 id of the merged-in parent, or null. */
+    private String _commitParentId;
+
+    /** SHA-1 id of this commit, fixed when it is created. */
+    private String _id;
 
     /** Current Working Directory. */
 
@@ -27,59 +36,84 @@ public class Commit implements Serializable {
     /** GITLET REPOSITORY folder. */
     static final File GITLET = Utils.join(CWD, ".gitlet");
 
-    /** STAGING AREA folder. */
-    static final File STAGING_AREA = Utils.join(GITLET, "staging_area");
-
-    /** STAGING FOR ADDITION folder. */
-    static final File STAGED_ADDITION = Utils.join(STAGING_AREA,
-            "staged_addition");
-
-    /** STAGING FOR REMOVAL folder. */
-    static final File STAGED_RM = Utils.join(STAGING_AREA, "staged_rm");
-
     /** COMMITS folder. */
     static final File COMMITS = Utils.join(GITLET, "commits");
 
-    /** BLOBS folder. */
-    static final File BLOBS = Utils.join(GITLET, "blobs");
-
-    /** BRANCHES folder. */
-    static final File BRANCHES = Utils.join(GITLET, "branches");
+    /** Number of loaded commits kept by load(). */
+    private static final int LOADED_LIMIT = 256;
+
+    /** Commits most recently returned by load(), by id, least recently
+     *  used first.  A saved commit never changes, so these never go
+     *  stale. */
+    private static final Map<String, Commit> LOADED =
+        new LinkedHashMap<String, Commit>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Commit> e) {
+                return size() > LOADED_LIMIT;
+            }
+        };
 
-    /** HEAD folder. */
-    static final File HEAD = Utils.join(GITLET, "head");
+    /** SHA-1 id of the root Tree of this commit's snapshot. */
+    private String _tree;
 
-    /** commitMap. */
-    private TreeMap<String, String> commitMap;
+    /** commitMap, mapping each path to its blob id.  Built from _tree on
+     *  first use after loading. */
+    private transient TreeMap<String, String> commitMap;
 
     public Commit(String message, Commit parent, Commit commitParent) {
         commitMap = new TreeMap<String, String>();
         _message = message;
-        _parent = parent;
-        _commitParent = commitParent;
-        if (_parent == null) {
+        if (parent != null) {
+            _parentId = parent.getId();
+        }
+        if (commitParent != null) {
+            _commitParentId = commitParent.getId();
+        }
+        if (parent == null) {
             _date = "Wed Dec 31 16:00:00 1969 -0800";
         } else {
 
-            String pattern = "EEE MMM d HH:mm:ss yyyy Z";
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(pattern);
+            SimpleDateFormat simpleDateFormat =
+                    new SimpleDateFormat(DATE_PATTERN);
             String date = simpleDateFormat.format(new Date());
             _date = date;
-            for (String s: _parent.commitMap.keySet()) {
-                commitMap.put(s, _parent.commitMap.get(s));
-            }
+            commitMap.putAll(parent.getCM());
         }
 
-        for (File f : STAGED_ADDITION.listFiles()) {
-            commitMap.put(f.getName(), Utils.sha1(Utils.readContents(f)));
-            f.renameTo(Utils.join(BLOBS,
-                    Utils.sha1(Utils.readContents(f)) + ".txt"));
+        Index index = Index.get();
+        TreeMap<String, String> changes =
+            new TreeMap<String, String>(index.added());
+        for (String name : index.removed()) {
+            if (commitMap.containsKey(name)) {
+                changes.put(name, null);
+            }
         }
-        for (File f : STAGED_RM.listFiles()) {
-            if (commitMap.containsKey(f.getName())) {
-                commitMap.remove(f.getName());
+        for (String name : changes.keySet()) {
+            if (changes.get(name) == null) {
+                commitMap.remove(name);
+            } else {
+                commitMap.put(name, changes.get(name));
             }
         }
+        _tree = Tree.update(parent == null ? null : parent._tree, changes);
+        _id = Utils.sha1(canonical());
+    }
+
+    /** Returns the canonical text encoding of this commit: its tree,
+     *  parent ids, date and message.  The commit id is the SHA-1 of
+     *  this text, so it does not depend on Java serialization. */
+    String canonical() {
+        StringBuilder result = new StringBuilder();
+        result.append("tree ").append(_tree).append('\n');
+        if (_parentId != null) {
+            result.append("parent ").append(_parentId).append('\n');
+        }
+        if (_commitParentId != null) {
+            result.append("parent ").append(_commitParentId).append('\n');
+        }
+        result.append("date ").append(_date).append('\n');
+        result.append('\n').append(_message);
+        return result.toString();
     }
     public String getMessage() {
         return _message;
@@ -87,32 +121,96 @@ public class Commit implements Serializable {
     public String getDate() {
         return _date;
     }
+
+    /** Returns the time at which this commit was made. */
+    public Date getTime() {
+        try {
+            return new SimpleDateFormat(DATE_PATTERN).parse(_date);
+        } catch (ParseException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the parent, or null for the initial commit.  It is not
+     *  kept here but loaded through load(), so that a cached commit does
+     *  not hold the history behind it. */
     public Commit getParent() {
-        return _parent;
+        return _parentId == null ? null : load(_parentId);
     }
+
+    /** Returns the merged-in parent, or null, loaded as by getParent(). */
     public Commit getCommitParent() {
-        return _commitParent;
+        return _commitParentId == null ? null : load(_commitParentId);
+    }
+    public String getId() {
+        return _id;
+    }
+    public String getParentId() {
+        return _parentId;
+    }
+    public String getCommitParentId() {
+        return _commitParentId;
+    }
+
+    /** Returns the commit saved under ID in COMMITS or in the pack.
+     *  Parents are stored as ids, so this reads a single fixed-size
+     *  object no matter how deep the history behind it is.  The most
+     *  recently loaded commits are kept, so a daemon serving many commands
+     *  reads each only once. */
+    public static Commit load(String id) {
+        synchronized (LOADED) {
+            Commit c = LOADED.get(id);
+            if (c != null) {
+                return c;
+            }
+        }
+        File f = Utils.join(COMMITS, id);
+        Commit c;
+        if (f.isFile()) {
+            c = Utils.readObject(f, Commit.class);
+        } else {
+            c = Utils.deserialize(Main.PACK.read(id), Commit.class);
+        }
+        synchronized (LOADED) {
+            LOADED.put(id, c);
+        }
+        return c;
+    }
+
+    /** Returns true iff a commit with id ID has been saved. */
+    public static boolean exists(String id) {
+        return Main.COMMIT_INDEX.contains(id);
+    }
+
+    /** Returns the ids of all saved commits, loose or packed, in
+     *  order. */
+    public static List<String> ids() {
+        return Main.COMMIT_INDEX.ids();
     }
     public TreeMap<String, String> getCM() {
+        if (commitMap == null) {
+            commitMap = new TreeMap<String, String>();
+            Tree.flatten(_tree, "", commitMap);
+        }
         return this.commitMap;
     }
+    public String getTree() {
+        return _tree;
+    }
 
 
+    /** Save this commit, then record it in the commit graph and message
+     *  index, empty the staging area and move the current branch to it.
+     *  The journal entry made once the commit is saved lets a later run
+     *  finish those steps if this one stops part way. */
     public void saveCommit() throws IOException {
-        File d = new File(COMMITS, Utils.sha1(Utils.serialize(this)));
-        d.createNewFile();
-        Utils.writeObject(d, this);
-        Utils.writeObject(HEAD, this);
-        for (File m : STAGED_RM.listFiles()) {
-            m.delete();
-        }
-        for (File f : BRANCHES.listFiles()) {
-            Branch deserializingF = Utils.readObject(f, Branch.class);
-            if (deserializingF.getActive()) {
-                deserializingF.commitSetter1(this);
-                Utils.writeObject(f, deserializingF);
-            }
-        }
+        Utils.writeObject(new File(COMMITS, _id), this);
+        Main.JOURNAL.begin("commit", _id);
+        Main.GRAPH.append(_id, _parentId, _commitParentId);
+        Main.MESSAGES.add(_id, _message);
+        Index.get().clear();
+        Branch.advance(_id);
+        Main.JOURNAL.end();
     }
 }
 
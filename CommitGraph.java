@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/** The shape of the commit history, kept apart from the commits.  The
+ *  graph file holds one fixed-width record per commit, in the order the
+ *  commits were made: its id, the positions of its two parents (or -1)
+ *  and its generation number, which is 1 for a root and otherwise one
+ *  more than the largest generation of its parents.  A commit can only
+ *  be an ancestor of commits with larger generations, which lets
+ *  ancestry and merge-base queries stop early.  The commit index maps
+ *  each commit id to its position.
+ *  @author athmiha bhaskaran
+ */
+class CommitGraph {
+
+    /** Position of a missing parent. */
+    static final int NONE = -1;
+
+    /** Length in bytes of a binary commit id. */
+    private static final int ID_SIZE = ObjectIndex.ID_SIZE;
+
+    /** Length in bytes of a record. */
+    private static final int RECORD_SIZE = ID_SIZE + 4 + 4 + 4;
+
+    /** Flag on commits reachable from the first commit of a query. */
+    private static final byte FROM_A = 1;
+
+    /** Flag on commits reachable from the second commit of a query. */
+    private static final byte FROM_B = 2;
+
+    /** Flag on commits reachable from a common ancestor already seen. */
+    private static final byte STALE = 4;
+
+    /** Flag on commits already reported as common ancestors. */
+    private static final byte RESULT = 8;
+
+    /** A graph kept in FILE, whose positions are recorded in INDEX. */
+    CommitGraph(File file, ObjectIndex index) {
+        _file = file;
+        _index = index;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return map().capacity() / RECORD_SIZE;
+    }
+
+    /** Returns the position of commit ID, or NONE. */
+    int position(String id) {
+        ByteBuffer value = _index.value(id);
+        return value == null ? NONE : value.getInt(0);
+    }
+
+    /** Returns the id of the commit at POS. */
+    String id(int pos) {
+        byte[] id = new byte[ID_SIZE];
+        map().get(pos * RECORD_SIZE, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the position of the first parent of POS, or NONE. */
+    int parent(int pos) {
+        return map().getInt(pos * RECORD_SIZE + ID_SIZE);
+    }
+
+    /** Returns the position of the second parent of POS, or NONE. */
+    int commitParent(int pos) {
+        return map().getInt(pos * RECORD_SIZE + ID_SIZE + 4);
+    }
+
+    /** Returns the generation number of POS. */
+    int generation(int pos) {
+        return map().getInt(pos * RECORD_SIZE + ID_SIZE + 8);
+    }
+
+    /** Add commit ID with parents PARENT and COMMITPARENT (ids or null)
+     *  to the graph and to the commit index, returning its position.  A
+     *  partial record left at the end of the file is overwritten, and a
+     *  last record for ID that never reached the commit index is indexed
+     *  rather than written again. */
+    int append(String id, String parent, String commitParent) {
+        int pos = position(id);
+        if (pos != NONE) {
+            return pos;
+        }
+        pos = size();
+        if (pos > 0 && id(pos - 1).equals(id)) {
+            _index.add(id, ByteBuffer.allocate(4).putInt(pos - 1).array());
+            return pos - 1;
+        }
+        int p1 = parent == null ? NONE : position(parent);
+        int p2 = commitParent == null ? NONE : position(commitParent);
+        int gen = 1;
+        if (p1 != NONE) {
+            gen = Math.max(gen, generation(p1) + 1);
+        }
+        if (p2 != NONE) {
+            gen = Math.max(gen, generation(p2) + 1);
+        }
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_SIZE);
+        rec.put(Utils.fromHex(id)).putInt(p1).putInt(p2).putInt(gen).flip();
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE)) {
+            out.truncate((long) pos * RECORD_SIZE);
+            out.position((long) pos * RECORD_SIZE);
+            while (rec.hasRemaining()) {
+                out.write(rec);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.appended(_file);
+        _map = null;
+        _index.add(id, ByteBuffer.allocate(4).putInt(pos).array());
+        return pos;
+    }
+
+    /** Forget the mapped graph, so that the next use maps it again. */
+    void reload() {
+        _map = null;
+    }
+
+    /** Returns true iff commit A is B or one of B's ancestors. */
+    boolean isAncestor(String a, String b) {
+        int target = position(a), start = position(b);
+        int gen = generation(target);
+        boolean[] seen = new boolean[size()];
+        ArrayList<Integer> todo = new ArrayList<>();
+        todo.add(start);
+        seen[start] = true;
+        while (!todo.isEmpty()) {
+            int pos = todo.remove(todo.size() - 1);
+            if (pos == target) {
+                return true;
+            }
+            for (int p : new int[] {parent(pos), commitParent(pos)}) {
+                if (p != NONE && !seen[p] && generation(p) >= gen) {
+                    seen[p] = true;
+                    todo.add(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the id of the best common ancestor of commits A and B: a
+     *  common ancestor that is not an ancestor of any other common
+     *  ancestor.  If there are several (as in criss-cross histories),
+     *  chooses the one with the largest generation, preferring among
+     *  equals the one on A's first-parent line.  Returns null if A and B
+     *  share no history. */
+    String mergeBase(String a, String b) {
+        int posA = position(a), posB = position(b);
+        if (posA == posB) {
+            return a;
+        }
+        byte[] flags = new byte[size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> generation(y) != generation(x)
+                ? Integer.compare(generation(y), generation(x))
+                : Integer.compare(y, x));
+        flags[posA] |= FROM_A;
+        flags[posB] |= FROM_B;
+        queue.add(posA);
+        queue.add(posB);
+        ArrayList<Integer> found = new ArrayList<>();
+        while (!allStale(queue, flags)) {
+            int pos = queue.poll();
+            int f = flags[pos] & (FROM_A | FROM_B | STALE);
+            if ((f & (FROM_A | FROM_B)) == (FROM_A | FROM_B)) {
+                if ((flags[pos] & RESULT) == 0) {
+                    flags[pos] |= RESULT;
+                    found.add(pos);
+                }
+                f |= STALE;
+            }
+            for (int p : new int[] {parent(pos), commitParent(pos)}) {
+                if (p != NONE && (flags[p] & f) != f) {
+                    flags[p] |= f;
+                    queue.add(p);
+                }
+            }
+        }
+        int best = NONE;
+        for (int c : found) {
+            if ((flags[c] & STALE) != 0 || reachesOther(c, found)) {
+                continue;
+            }
+            if (best == NONE || generation(c) > generation(best)
+                || (generation(c) == generation(best)
+                    && onFirstParentLine(c, posA))) {
+                best = c;
+            }
+        }
+        return best == NONE ? null : id(best);
+    }
+
+    /** Returns true iff C is reached from START by following first
+     *  parents only. */
+    private boolean onFirstParentLine(int c, int start) {
+        int gen = generation(c);
+        for (int pos = start; pos != NONE && generation(pos) >= gen;
+             pos = parent(pos)) {
+            if (pos == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true iff every commit in QUEUE is marked STALE in
+     *  FLAGS. */
+    private boolean allStale(PriorityQueue<Integer> queue, byte[] flags) {
+        for (int pos : queue) {
+            if ((flags[pos] & STALE) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true iff C is an ancestor of some other commit in
+     *  CANDIDATES. */
+    private boolean reachesOther(int c, ArrayList<Integer> candidates) {
+        for (int other : candidates) {
+            if (other != c && generation(other) > generation(c)
+                && isAncestor(id(c), id(other))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the mapped graph file, mapping it on first use. */
+    private ByteBuffer map() {
+        if (_map == null) {
+            if (!_file.isFile()) {
+                return ByteBuffer.allocate(0);
+            }
+            try (FileChannel ch = FileChannel.open(_file.toPath(),
+                                                   StandardOpenOption.READ)) {
+                _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _map;
+    }
+
+    /** The graph file. */
+    private final File _file;
+
+    /** The commit index, mapping ids to positions. */
+    private final ObjectIndex _index;
+
+    /** Mapped contents of _file, or null if not yet mapped. */
+    private ByteBuffer _map;
+}
@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A long-running server for the commands of one repository.  It listens
+ *  on a Unix-domain socket in the repository and runs the commands
+ *  clients send it, one at a time, each under the repository lock like
+ *  any other command.  Between commands it keeps the index and its stat
+ *  cache, the packed refs, the mapped commit, pack and message indexes
+ *  and recently loaded commits in memory.
+ *
+ *  Other gitlet processes may change the repository between commands.
+ *  Before each command, the daemon compares the modification time, size
+ *  and file key of each cached file with those it saw after the last
+ *  command, and drops the cache of any file that changed.
+ *
+ *  A request is the number of arguments followed by each argument; the
+ *  reply is an exit status followed by what the command printed on the
+ *  standard output and on the standard error, each preceded by its
+ *  length.
+ *  @author athmiha bhaskaran
+ */
+class Daemon {
+
+    /** Current Working Directory. */
+    static final File CWD = new File(System.getProperty("user.dir"));
+
+    /** GITLET REPOSITORY folder. */
+    static final File GITLET = Utils.join(CWD, ".gitlet");
+
+    /** Socket on which the daemon listens. */
+    static final File SOCKET = Utils.join(GITLET, "daemon.sock");
+
+    /** Serve commands until a client sends "daemon stop". */
+    static void serve() throws IOException {
+        if (!GITLET.isDirectory()) {
+            throw new GitletException("Not in an initialized "
+                                      + "Gitlet directory.");
+        }
+        if (_serving || answers()) {
+            throw new GitletException("A daemon is already running.");
+        }
+        SOCKET.delete();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            _serving = true;
+            while (_serving) {
+                try (SocketChannel client = server.accept()) {
+                    answer(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            _serving = false;
+            SOCKET.delete();
+        }
+    }
+
+    /** Returns true iff a daemon is listening on SOCKET. */
+    private static boolean answers() {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        try (SocketChannel ch = SocketChannel.open(
+                 UnixDomainSocketAddress.of(SOCKET.toPath()))) {
+            new DataOutputStream(Channels.newOutputStream(ch)).writeInt(-1);
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Read a command from CLIENT, run it, and send CLIENT the reply. */
+    private static void answer(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        int argc = in.readInt();
+        if (argc < 0) {
+            return;
+        }
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i += 1) {
+            args[i] = in.readUTF();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream stdout = System.out, stderr = System.err;
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+        int status = 0;
+        try {
+            if (args.length == 2 && args[0].equals("daemon")
+                && args[1].equals("stop")) {
+                _serving = false;
+            } else {
+                Main.main(args);
+            }
+        } catch (IOException | RuntimeException excp) {
+            excp.printStackTrace();
+            status = 1;
+            forget();
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        DataOutputStream reply = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        reply.writeInt(status);
+        reply.writeInt(out.size());
+        out.writeTo(reply);
+        reply.writeInt(err.size());
+        err.writeTo(reply);
+        reply.flush();
+    }
+
+    /** Drop the cache of each file changed since the last command.  Does
+     *  nothing unless serving. */
+    static void checkCaches() {
+        if (!_serving) {
+            return;
+        }
+        for (Map.Entry<File, Runnable> e : caches().entrySet()) {
+            String stamp = stamp(e.getKey());
+            if (!stamp.equals(_stamps.get(e.getKey()))) {
+                e.getValue().run();
+            }
+        }
+    }
+
+    /** Remember the state of each cached file, as the current command
+     *  leaves it.  Does nothing unless serving. */
+    static void noteCaches() {
+        if (!_serving) {
+            return;
+        }
+        for (File f : caches().keySet()) {
+            _stamps.put(f, stamp(f));
+        }
+    }
+
+    /** Drop every cache. */
+    private static void forget() {
+        for (Runnable reload : caches().values()) {
+            reload.run();
+        }
+        _stamps.clear();
+    }
+
+    /** Returns the modification time, size and file key of F, or the
+     *  empty string if F does not exist. */
+    private static String stamp(File f) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            return attrs.lastModifiedTime().toMillis() + ":" + attrs.size()
+                + ":" + attrs.fileKey();
+        } catch (IOException excp) {
+            return "";
+        }
+    }
+
+    /** Returns the cached files, each mapped to the action that drops
+     *  its cache. */
+    private static Map<File, Runnable> caches() {
+        if (_caches == null) {
+            _caches = new LinkedHashMap<>();
+            _caches.put(Index.INDEX, Index::reload);
+            _caches.put(Utils.join(GITLET, "commits.idx"),
+                        Main.COMMIT_INDEX::reload);
+            _caches.put(Utils.join(GITLET, "commits.idx.log"),
+                        Main.COMMIT_INDEX::reload);
+            _caches.put(Utils.join(GITLET, "commit-graph"),
+                        Main.GRAPH::reload);
+            _caches.put(Utils.join(Main.PACKS, "objects.idx"),
+                        Main.PACK.index()::reload);
+            _caches.put(Utils.join(GITLET, "messages"),
+                        Main.MESSAGES::reload);
+            _caches.put(Branch.PACKED, Branch::reload);
+        }
+        return _caches;
+    }
+
+    /** True while serving commands. */
+    private static boolean _serving;
+
+    /** Cached files, mapped to the actions that drop their caches. */
+    private static Map<File, Runnable> _caches;
+
+    /** The state of each cached file after the last command. */
+    private static final HashMap<File, String> _stamps = new HashMap<>();
+}
@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Line-based deltas between two versions of a blob, computed with the
+ *  edit scripts produced by Diff.  A delta is a sequence of operations,
+ *  each either copying a run of lines from the base or inserting new
+ *  lines.  Lines keep their terminators and are decoded as ISO-8859-1,
+ *  so applying a delta reproduces the target byte for byte.
+ *  @author athmiha bhaskaran
+ */
+class Delta {
+
+    /** Operation copying a run of base lines. */
+    private static final int COPY = 'C';
+
+    /** Operation inserting literal lines. */
+    private static final int INSERT = 'I';
+
+    /** Largest total line count of base and target for which we try to
+     *  build a delta.  Diff needs space linear in this, but its time also
+     *  grows with the number of differing lines. */
+    static final int MAX_LINES = 1 << 20;
+
+    /** Returns a delta converting BASE into TARGET, or null if TARGET is
+     *  too large to diff or the delta would not be smaller than TARGET
+     *  itself. */
+    static byte[] create(byte[] base, byte[] target) {
+        List<String> lines1 = split(base), lines2 = split(target);
+        if (lines1.size() + lines2.size() > MAX_LINES) {
+            return null;
+        }
+        Diff diff = new Diff();
+        diff.setSequences(lines1, lines2);
+        int[] edits = diff.diffs();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int pos = 0;
+            for (int k = 0; k < edits.length; k += 4) {
+                if (edits[k] > pos) {
+                    copy(out, pos, edits[k] - pos);
+                }
+                if (edits[k + 3] > 0) {
+                    insert(out, lines2.subList(edits[k + 2],
+                                               edits[k + 2] + edits[k + 3]));
+                }
+                pos = edits[k] + edits[k + 1];
+            }
+            if (pos < lines1.size()) {
+                copy(out, pos, lines1.size() - pos);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (bytes.size() >= target.length) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        List<String> lines = split(base);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataInputStream in =
+                 new DataInputStream(new ByteArrayInputStream(delta))) {
+            while (in.available() > 0) {
+                int op = in.readByte();
+                if (op == COPY) {
+                    int start = in.readInt(), count = in.readInt();
+                    for (int i = start; i < start + count; i += 1) {
+                        result.write(lines.get(i)
+                                     .getBytes(StandardCharsets.ISO_8859_1));
+                    }
+                } else if (op == INSERT) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i += 1) {
+                        byte[] line = new byte[in.readInt()];
+                        in.readFully(line);
+                        result.write(line);
+                    }
+                } else {
+                    throw new IllegalArgumentException("corrupt delta");
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.toByteArray();
+    }
+
+    /** Write a COPY of COUNT lines starting at base line START to OUT. */
+    private static void copy(DataOutputStream out, int start, int count)
+        throws IOException {
+        out.writeByte(COPY);
+        out.writeInt(start);
+        out.writeInt(count);
+    }
+
+    /** Write an INSERT of LINES to OUT. */
+    private static void insert(DataOutputStream out, List<String> lines)
+        throws IOException {
+        out.writeByte(INSERT);
+        out.writeInt(lines.size());
+        for (String line : lines) {
+            byte[] b = line.getBytes(StandardCharsets.ISO_8859_1);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+
+    /** Returns CONTENTS split into lines, each keeping its trailing
+     *  newline. */
+    private static List<String> split(byte[] contents) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < contents.length; i += 1) {
+            if (contents[i] == '\n') {
+                result.add(new String(contents, start, i + 1 - start,
+                                      StandardCharsets.ISO_8859_1));
+                start = i + 1;
+            }
+        }
+        if (start < contents.length) {
+            result.add(new String(contents, start, contents.length - start,
+                                  StandardCharsets.ISO_8859_1));
+        }
+        return result;
+    }
+}
@@ -6,9 +6,9 @@ import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
@@ -18,7 +18,9 @@ import static java.lang.Math.max;
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  Common subsequences are found by Myers's O(ND) algorithm in
+ *  linear space or, optionally, by histogram diff, so memory grows with
+ *  the lengths of the sequences rather than their product.
  *  @author P. N. Hilfinger */
 public class Diff {
 
@@ -27,8 +29,7 @@ public class Diff {
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _common = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +49,7 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+        _common = null;
     }
 
     /** Return the first of the current sequences. */
@@ -72,80 +72,53 @@ public class Diff {
         return _lines2.get(k);
     }
 
+    /** Select ALGORITHM to find common subsequences. */
+    public void setAlgorithm(Algorithm algorithm) {
+        _algorithm = algorithm;
+        _common = null;
+    }
+
     /** Return the length of the longest subsequence of the first K1 and K2
-     *  items, respectively, of the current data sequences. */
+     *  items, respectively, of the current data sequences.  This keeps
+     *  only one row of the usual table, so it takes O(K1 * K2) time but
+     *  O(K2) space. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
-            return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
+        k1 = Math.min(k1, _lines1.size());
+        k2 = Math.min(k2, _lines2.size());
+        int[] prev = new int[k2 + 1], row = new int[k2 + 1];
+        for (int i = 1; i <= k1; i += 1) {
+            for (int j = 1; j <= k2; j += 1) {
+                if (_lines1.get(i - 1).equals(_lines2.get(j - 1))) {
+                    row[j] = prev[j - 1] + 1;
                 } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
+                    row[j] = max(row[j - 1], prev[j]);
                 }
             }
+            int[] t = prev;
+            prev = row;
+            row = t;
         }
-        return _lls[k1][k2];
+        return prev[k2];
     }
 
     /** Return the length of the longest common subsequence of the current
-     *  data subsequences. */
+     *  data subsequences.  With the HISTOGRAM algorithm this is the length
+     *  of the common subsequence it finds, which need not be longest. */
     public int lls() {
-        checkData();
-        return lls(_lines1.size(), _lines2.size());
+        int[] common = commonSubsequence();
+        int result = 0;
+        for (int k = 2; k < common.length; k += 3) {
+            result += common[k];
+        }
+        return result;
     }
 
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return _lines1.equals(_lines2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -166,29 +139,20 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
+        checkData();
+        if (_common == null) {
+            intern();
+            _runs = new ArrayList<>();
+            if (_algorithm == Algorithm.HISTOGRAM) {
+                histogram(0, _a.length, 0, _b.length, 0);
             } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
+                myers(0, _a.length, 0, _b.length);
             }
+            _common = toIntArr(_runs);
+            _runs = null;
+            _a = _b = _whereA = _whereB = null;
         }
-        return toIntArr(resultList);
+        return _common;
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -220,7 +184,49 @@ public class Diff {
             result.add(e2);
             result.add(_lines2.size() - e2);
         }
-        return toIntArr(result);
+        return slide(toIntArr(result));
+    }
+
+    /** Returns EDITS, as built by diffs(), with each pure insertion or
+     *  deletion moved as far toward the end of the sequences as the
+     *  unchanged lines after it allow, and merged with the edit after it
+     *  if it then touches that edit.  Where a line is inserted next to a
+     *  copy of itself, this reports the later copy as the new one, as a
+     *  table of longest common subsequences traced back from the end
+     *  does.  The edits are slid from last to first, so that each stops
+     *  where the edit after it has already come to rest. */
+    private int[] slide(int[] edits) {
+        int next = edits.length;
+        for (int k = edits.length - 4; k >= 0; k -= 4) {
+            int limit1 = next < edits.length ? edits[next] : _lines1.size();
+            int limit2 =
+                next < edits.length ? edits[next + 2] : _lines2.size();
+            if (edits[k + 3] == 0) {
+                while (edits[k] + edits[k + 1] < limit1
+                       && _lines1.get(edits[k])
+                          .equals(_lines1.get(edits[k] + edits[k + 1]))) {
+                    edits[k] += 1;
+                    edits[k + 2] += 1;
+                }
+            } else if (edits[k + 1] == 0) {
+                while (edits[k + 2] + edits[k + 3] < limit2
+                       && _lines2.get(edits[k + 2])
+                          .equals(_lines2.get(edits[k + 2] + edits[k + 3]))) {
+                    edits[k] += 1;
+                    edits[k + 2] += 1;
+                }
+            }
+            if (edits[k] + edits[k + 1] == limit1 && next < edits.length) {
+                edits[next + 1] += edits[next] - edits[k];
+                edits[next] = edits[k];
+                edits[next + 3] += edits[next + 2] - edits[k + 2];
+                edits[next + 2] = edits[k + 2];
+            } else {
+                next -= 4;
+                System.arraycopy(edits, k, edits, next, 4);
+            }
+        }
+        return Arrays.copyOfRange(edits, next, edits.length);
     }
 
     /** Raise an exception if there are no current data sequences for
@@ -231,45 +237,299 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
+    /** Set _a and _b to the lines of the two sequences, each replaced by
+     *  a number that is the same for equal lines.  Lines that do not
+     *  occur at all in the other sequence cannot be part of a common
+     *  subsequence and are left out; _whereA and _whereB give the
+     *  original position of each line kept. */
+    private void intern() {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] a = new int[_lines1.size()], b = new int[_lines2.size()];
+        for (int i = 0; i < a.length; i += 1) {
+            a[i] = ids.computeIfAbsent(_lines1.get(i), k -> ids.size());
+        }
+        boolean[] inA = new boolean[ids.size()];
+        for (int x : a) {
+            inA[x] = true;
+        }
+        boolean[] inB = new boolean[ids.size()];
+        for (int j = 0; j < b.length; j += 1) {
+            Integer x = ids.get(_lines2.get(j));
+            b[j] = x == null ? -1 : x;
+            if (x != null) {
+                inB[x] = true;
+            }
+        }
+        _whereA = kept(a, inB);
+        _whereB = kept(b, inA);
+        _a = new int[_whereA.length];
+        for (int i = 0; i < _a.length; i += 1) {
+            _a[i] = a[_whereA[i]];
+        }
+        _b = new int[_whereB.length];
+        for (int j = 0; j < _b.length; j += 1) {
+            _b[j] = b[_whereB[j]];
+        }
     }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
+    /** Returns the positions in LINES of the numbers X >= 0 for which
+     *  KEEP[X]. */
+    private static int[] kept(int[] lines, boolean[] keep) {
+        int n = 0;
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            if (lines[i] >= 0 && keep[lines[i]]) {
+                result[n] = i;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
     }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
+    /** Record that _a[A0 .. A0+LEN-1] matches _b[B0 .. B0+LEN-1].  Runs
+     *  must be recorded in order; they are stored by their original
+     *  positions, and merged where they continue the previous run. */
+    private void match(int a0, int b0, int len) {
+        for (int t = 0; t < len; t += 1) {
+            int i = _whereA[a0 + t], j = _whereB[b0 + t];
+            int n = _runs.size();
+            if (n > 0 && _runs.get(n - 3) + _runs.get(n - 1) == i
+                && _runs.get(n - 2) + _runs.get(n - 1) == j) {
+                _runs.set(n - 1, _runs.get(n - 1) + 1);
+            } else {
+                _runs.add(i);
+                _runs.add(j);
+                _runs.add(1);
+            }
+        }
     }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+    /** Record a common subsequence of _a[A0 .. A1-1] and _b[B0 .. B1-1]
+     *  of greatest length, by Myers's O(ND) algorithm.  Each step finds
+     *  the point at which a shortest edit script crosses its middle diagonal
+     *  and recurses on either side of it, so that only O(N + M) space is
+     *  used at any time. */
+    private void myers(int a0, int a1, int b0, int b1) {
+        int prefix = 0;
+        while (a0 + prefix < a1 && b0 + prefix < b1
+               && _a[a0 + prefix] == _b[b0 + prefix]) {
+            prefix += 1;
+        }
+        match(a0, b0, prefix);
+        a0 += prefix;
+        b0 += prefix;
+        int suffix = 0;
+        while (a0 < a1 - suffix && b0 < b1 - suffix
+               && _a[a1 - suffix - 1] == _b[b1 - suffix - 1]) {
+            suffix += 1;
+        }
+        a1 -= suffix;
+        b1 -= suffix;
+        if (a0 < a1 && b0 < b1) {
+            int[] split = middle(a0, a1, b0, b1);
+            if (split != null) {
+                myers(a0, split[0], b0, split[1]);
+                myers(split[0], a1, split[1], b1);
+            }
+        }
+        match(a1, b1, suffix);
     }
 
+    /** Returns a point {X, Y} through which a shortest edit script from
+     *  _a[A0 .. A1-1] to _b[B0 .. B1-1] passes, found by following the
+     *  furthest-reaching paths forward from the start and backward from
+     *  the end until they overlap.  Returns null if the ranges have
+     *  nothing in common. */
+    private int[] middle(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD, length = 2 * maxD + 2;
+        int[] fwd = new int[length], bwd = new int[length];
+        Arrays.fill(fwd, -1);
+        Arrays.fill(bwd, -1);
+        fwd[offset + 1] = 0;
+        bwd[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int fStart = 0, fEnd = 0, bStart = 0, bEnd = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+                int i = offset + k;
+                int x;
+                if (k == -d || (k != d && fwd[i - 1] < fwd[i + 1])) {
+                    x = fwd[i + 1];
+                } else {
+                    x = fwd[i - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                fwd[i] = x;
+                if (x > n) {
+                    fEnd += 2;
+                } else if (y > m) {
+                    fStart += 2;
+                } else if (odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && bwd[j] != -1
+                        && x >= n - bwd[j]) {
+                        return new int[] {a0 + x, b0 + y};
+                    }
+                }
+            }
+            for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+                int i = offset + k;
+                int x;
+                if (k == -d || (k != d && bwd[i - 1] < bwd[i + 1])) {
+                    x = bwd[i + 1];
+                } else {
+                    x = bwd[i - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m
+                       && _a[a1 - x - 1] == _b[b1 - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                bwd[i] = x;
+                if (x > n) {
+                    bEnd += 2;
+                } else if (y > m) {
+                    bStart += 2;
+                } else if (!odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && fwd[j] != -1) {
+                        int fx = fwd[j];
+                        if (fx >= n - x) {
+                            return new int[] {a0 + fx,
+                                              b0 + fx - (j - offset)};
+                        }
+                    }
+                }
+            }
+            if (d >= MAX_COST) {
+                return furthest(fwd, offset, -d + fStart, d - fEnd,
+                                n, m, a0, b0);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the point {X, Y} furthest along any of the forward paths in
+     *  FWD on diagonals K0 .. K1, where FWD and OFFSET are as in middle()
+     *  on a region of N by M lines starting at A0 and B0.  Splitting
+     *  there gives up a shortest edit script, but bounds the work done
+     *  on very different sequences. */
+    private static int[] furthest(int[] fwd, int offset, int k0, int k1,
+                                  int n, int m, int a0, int b0) {
+        int bestX = 0, bestY = 0;
+        for (int k = k0; k <= k1; k += 2) {
+            int x = fwd[offset + k], y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > bestX + bestY) {
+                bestX = x;
+                bestY = y;
+            }
+        }
+        return new int[] {a0 + bestX, b0 + bestY};
+    }
+
+    /** Record a common subsequence of _a[A0 .. A1-1] and _b[B0 .. B1-1]
+     *  by histogram diff.  The region is split around the longest run of
+     *  matching lines that starts with the line occurring least often in
+     *  _a, so that rare lines such as function headers line up in
+     *  preference to blank lines and braces.  Regions with no line
+     *  occurring at most MAX_CHAIN times, or nested more than MAX_NESTING
+     *  deep, fall back to Myers's algorithm.  NESTING is the current
+     *  depth. */
+    private void histogram(int a0, int a1, int b0, int b1, int nesting) {
+        if (a0 >= a1 || b0 >= b1) {
+            return;
+        }
+        if (nesting > MAX_NESTING) {
+            myers(a0, a1, b0, b1);
+            return;
+        }
+        HashMap<Integer, ArrayList<Integer>> where = new HashMap<>();
+        for (int i = a0; i < a1; i += 1) {
+            where.computeIfAbsent(_a[i], k -> new ArrayList<>()).add(i);
+        }
+        int bestCount = MAX_CHAIN + 1, bestLen = 0;
+        int bestA = -1, bestB = -1;
+        for (int j = b0; j < b1;) {
+            ArrayList<Integer> occ = where.get(_b[j]);
+            int next = j + 1;
+            if (occ != null && occ.size() <= bestCount) {
+                for (int i : occ) {
+                    int s1 = i, s2 = j;
+                    while (s1 > a0 && s2 > b0 && _a[s1 - 1] == _b[s2 - 1]) {
+                        s1 -= 1;
+                        s2 -= 1;
+                    }
+                    int e1 = i + 1, e2 = j + 1;
+                    while (e1 < a1 && e2 < b1 && _a[e1] == _b[e2]) {
+                        e1 += 1;
+                        e2 += 1;
+                    }
+                    if (occ.size() < bestCount || e1 - s1 > bestLen) {
+                        bestCount = occ.size();
+                        bestLen = e1 - s1;
+                        bestA = s1;
+                        bestB = s2;
+                    }
+                    next = Math.max(next, e2);
+                }
+            }
+            j = next;
+        }
+        if (bestA < 0) {
+            myers(a0, a1, b0, b1);
+            return;
+        }
+        histogram(a0, bestA, b0, bestB, nesting + 1);
+        match(bestA, bestB, bestLen);
+        histogram(bestA + bestLen, a1, bestB + bestLen, b1, nesting + 1);
+    }
+
+    /** Ways of finding a common subsequence. */
+    public enum Algorithm {
+        /** Myers's algorithm, which finds a longest common subsequence. */
+        MYERS,
+        /** Histogram diff, which prefers to align rarely occurring lines. */
+        HISTOGRAM
+    }
+
+    /** Largest number of occurrences of a line in the first sequence for
+     *  histogram diff to align on it. */
+    private static final int MAX_CHAIN = 64;
+
+    /** Length of edit script past which Myers's algorithm stops looking
+     *  for a shortest one. */
+    private static final int MAX_COST = 4096;
+
+    /** Depth of nested regions past which histogram diff gives way to
+     *  Myers's algorithm. */
+    private static final int MAX_NESTING = 64;
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The algorithm used to find common subsequences. */
+    private Algorithm _algorithm = Algorithm.MYERS;
+
+    /** The value of commonSubsequence(), or null if not yet computed. */
+    private int[] _common;
+
+    /** The lines of _lines1 and _lines2 as numbers, while computing
+     *  _common. */
+    private int[] _a, _b;
+
+    /** The positions in the sequences of the lines in _a and _b. */
+    private int[] _whereA, _whereB;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** The runs of matching lines found so far, while computing _common,
+     *  as in the result of commonSubsequence(). */
+    private ArrayList<Integer> _runs;
 
 }
@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.util.List;
+
+/** The differences between two versions of a file, as a list of hunks.
+ *  The edits are computed once, when the FileDiff is made, and each
+ *  hunk then names the lines it removes from the first version and the
+ *  lines it adds from the second.
+ *  @author athmiha bhaskaran
+ */
+class FileDiff {
+
+    /** The algorithm used to find the lines two versions have in common,
+     *  set by the gitlet.diff.algorithm property to "myers" (the default)
+     *  or "histogram". */
+    static final Diff.Algorithm ALGORITHM =
+        "histogram".equalsIgnoreCase(
+            System.getProperty("gitlet.diff.algorithm"))
+        ? Diff.Algorithm.HISTOGRAM : Diff.Algorithm.MYERS;
+
+    /** The differences between the lines BEFORE and the lines AFTER. */
+    FileDiff(List<String> before, List<String> after) {
+        Diff diff = new Diff();
+        diff.setSequences(before, after);
+        diff.setAlgorithm(ALGORITHM);
+        _before = diff.sequence1();
+        _after = diff.sequence2();
+        _edits = diff.diffs();
+    }
+
+    /** Returns the number of hunks. */
+    int size() {
+        return _edits.length / 4;
+    }
+
+    /** Returns true iff the two versions have the same lines. */
+    boolean isEmpty() {
+        return _edits.length == 0;
+    }
+
+    /** Returns the 0-based line number in the first version at which
+     *  hunk K starts. */
+    int start1(int k) {
+        return _edits[4 * k];
+    }
+
+    /** Returns the number of lines hunk K removes. */
+    int length1(int k) {
+        return _edits[4 * k + 1];
+    }
+
+    /** Returns the 0-based line number in the second version at which
+     *  hunk K starts. */
+    int start2(int k) {
+        return _edits[4 * k + 2];
+    }
+
+    /** Returns the number of lines hunk K adds. */
+    int length2(int k) {
+        return _edits[4 * k + 3];
+    }
+
+    /** Returns the lines hunk K removes. */
+    List<String> removed(int k) {
+        return _before.subList(start1(k), start1(k) + length1(k));
+    }
+
+    /** Returns the lines hunk K adds. */
+    List<String> added(int k) {
+        return _after.subList(start2(k), start2(k) + length2(k));
+    }
+
+    /** The two versions. */
+    private final List<String> _before, _after;
+
+    /** The edits from _before to _after, as returned by Diff.diffs(). */
+    private final int[] _edits;
+}
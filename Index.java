@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** The staging area together with a cache of working-file hashes.  For
+ *  each file hashed so far it records the file's modification time, size
+ *  and inode, so a file whose stat data is unchanged need not be read
+ *  again to find its blob id.
+ *  @author athmiha bhaskaran
+ */
+public class Index implements Serializable {
+
+    /** Current Working Directory. */
+    static final File CWD = new File(System.getProperty("user.dir"));
+
+    /** GITLET REPOSITORY folder. */
+    static final File GITLET = Utils.join(CWD, ".gitlet");
+
+    /** INDEX file. */
+    static final File INDEX = Utils.join(GITLET, "index");
+
+    /** Files modified less than this many nanoseconds before they were
+     *  hashed may change again without their stat data changing, so their
+     *  hashes are not cached. */
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** Stat data and hash of one working file. */
+    private static class Stat implements Serializable {
+        /** Modification time in nanoseconds. */
+        private long _mtime;
+        /** Length in bytes. */
+        private long _size;
+        /** Inode, or other file key, as a string. */
+        private String _inode;
+        /** Blob id of the contents. */
+        private String _hash;
+    }
+
+    /** Returns the index of this repository, reading it on first use. */
+    static Index get() {
+        if (_current == null) {
+            _current = INDEX.isFile()
+                ? Utils.readObject(INDEX, Index.class) : new Index();
+        }
+        return _current;
+    }
+
+    /** Write the index back if it was read and has changed. */
+    static void saveIfChanged() {
+        if (_current != null && _current._changed && GITLET.isDirectory()) {
+            Utils.writeObject(INDEX, _current);
+            _current._changed = false;
+        }
+    }
+
+    /** Forget the index read by get(), along with any unsaved changes to
+     *  it, so that the next get() reads it again. */
+    static void reload() {
+        _current = null;
+    }
+
+    /** Returns the blob id of working file F, named NAME in the index,
+     *  reusing the cached hash if F's stat data has not changed. */
+    String hash(String name, File f) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            String inode = String.valueOf(attrs.fileKey());
+            Stat st = _stats.get(name);
+            if (st != null && st._mtime == mtime && st._size == attrs.size()
+                && st._inode.equals(inode)) {
+                return st._hash;
+            }
+            String hash = Utils.sha1(f);
+            long now = TimeUnit.MILLISECONDS.toNanos(
+                System.currentTimeMillis());
+            if (now - mtime >= RACY_NANOS) {
+                st = new Stat();
+                st._mtime = mtime;
+                st._size = attrs.size();
+                st._inode = inode;
+                st._hash = hash;
+                _stats.put(name, st);
+                _changed = true;
+            } else if (_stats.remove(name) != null) {
+                _changed = true;
+            }
+            return hash;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the files staged for addition, mapped to their blob ids. */
+    TreeMap<String, String> added() {
+        return _added;
+    }
+
+    /** Returns the files staged for removal. */
+    TreeSet<String> removed() {
+        return _removed;
+    }
+
+    /** Returns true iff nothing is staged. */
+    boolean isClean() {
+        return _added.isEmpty() && _removed.isEmpty();
+    }
+
+    /** Stage NAME for addition with blob ID. */
+    void add(String name, String id) {
+        _added.put(name, id);
+        _changed = true;
+    }
+
+    /** Stage NAME for removal. */
+    void remove(String name) {
+        _removed.add(name);
+        _changed = true;
+    }
+
+    /** Unstage NAME for addition. */
+    void unadd(String name) {
+        _changed |= _added.remove(name) != null;
+    }
+
+    /** Unstage NAME for removal. */
+    void unremove(String name) {
+        _changed |= _removed.remove(name);
+    }
+
+    /** Unstage all additions. */
+    void clearAdded() {
+        _changed |= !_added.isEmpty();
+        _added.clear();
+    }
+
+    /** Unstage everything. */
+    void clear() {
+        clearAdded();
+        _changed |= !_removed.isEmpty();
+        _removed.clear();
+    }
+
+    /** Files staged for addition, mapped to their blob ids. */
+    private TreeMap<String, String> _added = new TreeMap<>();
+
+    /** Files staged for removal. */
+    private TreeSet<String> _removed = new TreeSet<>();
+
+    /** Cached stat data and hashes of working files, by name. */
+    private TreeMap<String, Stat> _stats = new TreeMap<>();
+
+    /** True iff this index differs from the one on disk. */
+    private transient boolean _changed;
+
+    /** The index read by get(). */
+    private static Index _current;
+}
@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/** A write-ahead journal of the operation now changing the repository.
+ *  Before an operation rewrites refs, the index or the working files, it
+ *  appends a line naming itself and the commits it works between, after
+ *  forcing everything written so far to disk.  The journal is removed
+ *  once the operation's own writes are forced to disk.  A run that finds
+ *  the journal left behind knows, from its last line alone, what to
+ *  finish or undo, without scanning the repository.
+ *
+ *  Operations may nest, as when merge ends in a commit; only the
+ *  outermost end() removes the journal.
+ *  @author athmiha bhaskaran
+ */
+class Journal {
+
+    /** A journal kept in FILE. */
+    Journal(File file) {
+        _file = file;
+    }
+
+    /** Record the start of the operation described by the words RECORD. */
+    void begin(String... record) {
+        Utils.sync();
+        ByteBuffer line = ByteBuffer.wrap((String.join(" ", record) + "\n")
+                                          .getBytes(StandardCharsets.UTF_8));
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.APPEND)) {
+            while (line.hasRemaining()) {
+                out.write(line);
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _depth += 1;
+    }
+
+    /** Record the end of the operation most recently begun. */
+    void end() {
+        _depth -= 1;
+        if (_depth == 0) {
+            clear();
+        }
+    }
+
+    /** Returns true iff a previous run left the journal behind. */
+    boolean pending() {
+        return _file.isFile();
+    }
+
+    /** Returns the words of the last complete record of an operation that
+     *  a previous run began and did not end, or null if there is none.  A
+     *  journal holding no complete record is removed. */
+    String[] interrupted() {
+        if (!_file.isFile()) {
+            return null;
+        }
+        String text = Utils.readContentsAsString(_file);
+        int end = text.lastIndexOf('\n');
+        if (end < 0) {
+            _file.delete();
+            return null;
+        }
+        int start = text.lastIndexOf('\n', end - 1) + 1;
+        return text.substring(start, end).split(" ");
+    }
+
+    /** Save the index, force every write to disk, then remove the
+     *  journal and forget any operations still open. */
+    void clear() {
+        Index.saveIfChanged();
+        Utils.sync();
+        _file.delete();
+        _depth = 0;
+    }
+
+    /** The journal file. */
+    private final File _file;
+
+    /** Number of operations begun and not yet ended. */
+    private int _depth;
+}
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** An ObjectStore keeping one deflate-compressed file per object.  The
+ *  object with id aabbbb... lives in DIR/aa/bbbb..., so that no single
+ *  directory grows too large.
+ *  @author athmiha bhaskaran
+ */
+class LooseObjectStore implements ObjectStore {
+
+    /** Size of the copy buffer used while writing objects. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A store whose objects live under DIR. */
+    LooseObjectStore(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns the file holding object ID. */
+    File file(String id) {
+        return Utils.join(_dir, id.substring(0, 2), id.substring(2));
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return id.length() == Utils.UID_LENGTH && file(id).isFile();
+    }
+
+    @Override
+    public InputStream open(String id) {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("no such object: " + id);
+        }
+        try {
+            return new InflaterInputStream(new BufferedInputStream(
+                    Files.newInputStream(file(id).toPath())));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public String write(InputStream in) {
+        File tmp = null;
+        try {
+            MessageDigest md = Utils.sha1Digester();
+            tmp = File.createTempFile("obj", null, Utils.tempDir(_dir));
+            try (OutputStream out = new DeflaterOutputStream(
+                     new BufferedOutputStream(
+                         Files.newOutputStream(tmp.toPath())),
+                     new Deflater(Deflater.BEST_SPEED))) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    md.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                }
+            }
+            String id = Utils.toHex(md.digest());
+            File dest = file(id);
+            if (dest.exists()) {
+                tmp.delete();
+            } else {
+                dest.getParentFile().mkdirs();
+                Utils.rename(tmp, dest);
+            }
+            return id;
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The directory holding the fan-out subdirectories. */
+    private final File _dir;
+}
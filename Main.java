@@ -7,9 +7,25 @@ import java.io.IOException;
 import java.io.File;
 import java.util.Map.Entry;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeSet;
 import java.util.Collections;
-import java.util.Queue;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.Date;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author athmiha bhaskaran
  */
@@ -26,49 +42,132 @@ public class Main {
     static final File GITLET = Utils.join(CWD, ".gitlet");
 
     /**
-     * STAGING AREA folder.
+     * COMMITS folder.
      */
-    static final File STAGING_AREA = Utils.join(GITLET,
-            "staging_area");
+    static final File COMMITS = Utils.join(GITLET, "commits");
 
     /**
-     * STAGING FOR ADDITION folder.
+     * HEAD symbolic ref, naming the current branch.
      */
-    static final File STAGED_ADDITION = Utils.join(STAGING_AREA,
-            "staged_addition");
+    static final File HEAD = Branch.HEAD;
 
     /**
-     * STAGING FOR REMOVAL folder.
+     * BLOBS folder.
      */
-    static final File STAGED_RM = Utils.join(STAGING_AREA, "staged_rm");
+    static final File BLOBS = Utils.join(GITLET, "blobs");
 
     /**
-     * COMMITS folder.
+     * BRANCHES folder.
      */
-    static final File COMMITS = Utils.join(GITLET, "commits");
+    static final File BRANCHES = Utils.join(GITLET, "branches");
 
     /**
-     * HEAD folder.
+     * PACK folder.
      */
-    static final File HEAD = Utils.join(GITLET, "head");
+    static final File PACKS = Utils.join(GITLET, "pack");
 
     /**
-     * BLOBS folder.
+     * Pack of blobs and commits written by gc.
      */
-    static final File BLOBS = Utils.join(GITLET, "blobs");
+    static final PackFile PACK = new PackFile(Utils.join(PACKS,
+            "objects.pack"), Utils.join(PACKS, "objects.idx"));
 
     /**
-     * BRANCHES folder.
+     * Sorted index of the ids of all commits, loose or packed, giving
+     * each one's position in GRAPH.
      */
-    static final File BRANCHES = Utils.join(GITLET, "branches");
+    static final ObjectIndex COMMIT_INDEX =
+            new ObjectIndex(Utils.join(GITLET, "commits.idx"), 4);
+
+    /**
+     * Parents and generation numbers of all commits.
+     */
+    static final CommitGraph GRAPH =
+            new CommitGraph(Utils.join(GITLET, "commit-graph"), COMMIT_INDEX);
+
+    /**
+     * Search index over commit messages.
+     */
+    static final MessageIndex MESSAGES =
+            new MessageIndex(Utils.join(GITLET, "messages"),
+                             Utils.join(GITLET, "messages.log"));
+
+    /**
+     * Reachability bitmaps of the branches.
+     */
+    static final BranchBitmaps BITMAPS =
+            new BranchBitmaps(Utils.join(GITLET, "bitmaps"), GRAPH);
+
+    /**
+     * Store holding the contents of every committed file.
+     */
+    static final PackedObjectStore STORE =
+            new PackedObjectStore(new LooseObjectStore(BLOBS), PACK);
+
+    /**
+     * Journal of the operation changing the repository, if any.
+     */
+    static final Journal JOURNAL = new Journal(Utils.join(GITLET, "journal"));
+
+    /**
+     * Lock held while a command runs, waiting at most the number of
+     * milliseconds given by the gitlet.lock.timeout property.
+     */
+    static final RepositoryLock LOCK = new RepositoryLock(
+            Utils.join(GITLET, "lock"),
+            Long.getLong("gitlet.lock.timeout", 10000));
+
+    /**
+     * Commands that only read the repository, and so share the lock.
+     */
+    static final Set<String> READERS = Set.of("log", "global-log", "status",
+            "find", "diff");
+
+    /**
+     * Longest chain of deltas gc will build.
+     */
+    static final int MAX_DELTA_DEPTH = 16;
+
+    /**
+     * Number of threads diff uses to compare files, set by the
+     * gitlet.diff.threads property; 1 compares them one at a time.
+     */
+    static final int DIFF_THREADS = Integer.getInteger("gitlet.diff.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Number of threads checkout and reset use to write files, set by the
+     * gitlet.checkout.threads property.
+     */
+    static final int CHECKOUT_THREADS = Integer.getInteger(
+            "gitlet.checkout.threads",
+            Runtime.getRuntime().availableProcessors());
 
 
     public static void main(String... args) throws IOException {
+        boolean locked = false;
         try {
             if (args.length == 0) {
                 System.out.println("Please enter a command.");
                 return;
             }
+            if (args[0].equals("daemon")) {
+                daemon(args);
+                return;
+            }
+            boolean shared = READERS.contains(args[0]);
+            LOCK.acquire(shared);
+            if (shared && JOURNAL.pending()) {
+                LOCK.release();
+                shared = false;
+                LOCK.acquire(shared);
+            }
+            locked = true;
+            if (!shared) {
+                Utils.clearTemp();
+            }
+            Daemon.checkCaches();
+            recover();
             switch (args[0]) {
             case "init":
                 init();
@@ -83,7 +182,7 @@ public class Main {
                 checkout(args);
                 break;
             case "log":
-                log();
+                log(args);
                 break;
             case "rm":
                 rm(args[1]);
@@ -92,7 +191,13 @@ public class Main {
                 globalLog();
                 break;
             case "find":
-                find(args[1]);
+                find(args);
+                break;
+            case "reindex":
+                reindex();
+                break;
+            case "pack-refs":
+                packRefs();
                 break;
             case "status":
                 status();
@@ -112,28 +217,94 @@ public class Main {
             case "diff":
                 diff(args);
                 break;
+            case "gc":
+            case "repack":
+                gc();
+                break;
             default:
                 System.out.println("No command with that name exists.");
                 break;
             }
+            Index.saveIfChanged();
+            Utils.sync();
         } catch (GitletException a) {
             System.out.println(a.getMessage());
+            Index.saveIfChanged();
+            Utils.sync();
+        } finally {
+            if (locked) {
+                Daemon.noteCaches();
+            }
+            LOCK.release();
+        }
+    }
+
+    /** Serve commands sent through Client from the daemon socket, keeping
+     *  the repository's caches in memory between them ("daemon"), or ask
+     *  the running daemon to stop ("daemon stop"). */
+    public static void daemon(String[] args) throws IOException {
+        if (args.length == 1) {
+            Daemon.serve();
+        } else if (args.length == 2 && args[1].equals("stop")) {
+            SocketChannel ch = Client.connect();
+            if (ch == null) {
+                throw new GitletException("No daemon is running.");
+            }
+            Client.forward(ch, args);
+        } else {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Finish or undo the operation recorded in the journal by a run that
+     *  stopped part way through it.  A commit whose object was saved is
+     *  finished, as are reset and checkout, which rewrite the working
+     *  files from one commit to another.  A merge that had not reached
+     *  its commit is undone by restoring the files of HEAD. */
+    public static void recover() {
+        String[] op = JOURNAL.interrupted();
+        if (op == null) {
+            return;
         }
+        switch (op[0]) {
+        case "commit":
+            Commit c = Commit.load(op[1]);
+            GRAPH.append(c.getId(), c.getParentId(), c.getCommitParentId());
+            if (!MESSAGES.exact(c.getMessage()).contains(c.getId())) {
+                MESSAGES.add(c.getId(), c.getMessage());
+            }
+            Index.get().clear();
+            Branch.advance(c.getId());
+            break;
+        case "reset":
+            switchFiles(Commit.load(op[1]), Commit.load(op[2]));
+            Branch.advance(op[2]);
+            Index.get().clearAdded();
+            break;
+        case "checkout":
+            switchFiles(Commit.load(op[1]), Commit.load(op[2]));
+            Branch.setCurrent(op[3]);
+            Index.get().clearAdded();
+            break;
+        case "merge":
+            switchFiles(Commit.load(op[2]), Commit.load(op[1]));
+            Index.get().clear();
+            break;
+        default:
+            break;
+        }
+        JOURNAL.clear();
     }
 
     public static void init() throws IOException {
         if (!GITLET.exists()) {
             GITLET.mkdir();
-            STAGING_AREA.mkdir();
-            STAGED_ADDITION.mkdir();
-            STAGED_RM.mkdir();
             COMMITS.mkdir();
             BLOBS.mkdir();
             BRANCHES.mkdir();
+            Branch.setCurrent("master");
             Commit initial = new Commit("initial commit", null, null);
             initial.saveCommit();
-            Branch master = new Branch("master", true, initial);
-            master.branchSave();
         } else {
             throw new GitletException("A Gitlet version-control system "
                     + "already exists in the current directory.");
@@ -146,7 +317,7 @@ public class Main {
             System.out.println("Please enter a commit message.");
             return;
         }
-        Commit parent = Utils.readObject(HEAD, Commit.class);
+        Commit parent = Branch.head();
         Commit x = new Commit(message, parent, null);
         x.saveCommit();
         if (x.getCM().equals(parent.getCM())) {
@@ -155,119 +326,82 @@ public class Main {
         }
     }
 
+    /** Prints every commit once, newest first, loading one at a time
+     *  in commit-graph order. */
     public static void globalLog() {
-        for (File f : COMMITS.listFiles()) {
-            Commit deserializingfile = Utils.readObject(f, Commit.class);
-            while (deserializingfile != null) {
-                System.out.println("===");
-                System.out.println("commit "
-                        + cerealC(deserializingfile));
-                System.out.println("Date: " + deserializingfile.getDate());
-                System.out.println(deserializingfile.getMessage());
-                System.out.println("");
-                deserializingfile = deserializingfile.getParent();
-            }
+        for (int pos = GRAPH.size() - 1; pos >= 0; pos -= 1) {
+            logEntry(Commit.load(GRAPH.id(pos)));
         }
     }
 
+    /** Prints the log entry for commit C. */
+    private static void logEntry(Commit c) {
+        System.out.println("===");
+        System.out.println("commit " + cerealC(c));
+        System.out.println("Date: " + c.getDate());
+        System.out.println(c.getMessage());
+        System.out.println("");
+    }
+
     public static Commit lca(String name) {
-        String active = "master";
-        for (File b : BRANCHES.listFiles()) {
-            Branch deserializedB = Utils.readObject(b, Branch.class);
-            if (deserializedB.getActive()) {
-                active = b.getName();
-            }
-        }
-        Branch masterBranch = Utils.readObject(Utils.join(BRANCHES,
-                active), Branch.class);
-        Branch currentBranch = Utils.readObject(Utils.join(BRANCHES, name),
-                Branch.class);
-        ArrayList<String> visitedC = new ArrayList<String>();
-        Queue<Commit> q = new LinkedList<>();
-        q.add(currentBranch.getCommit());
-        while (!q.isEmpty()) {
-            Commit c = q.remove();
-            if (!visitedC.contains(cerealC(c))) {
-                visitedC.add(cerealC(c));
-            }
-            if (c.getParent() != null) {
-                q.add(c.getParent());
-            }
-            if (c.getCommitParent() != null) {
-                q.add(c.getCommitParent());
-            }
-        }
-        q.add(masterBranch.getCommit());
-        while (!q.isEmpty()) {
-            Commit c = q.remove();
-            if (visitedC.contains(cerealC(c))) {
-                return c;
-            }
-            if (c.getParent() != null) {
-                q.add(c.getParent());
-            }
-            if (c.getCommitParent() != null) {
-                q.add(c.getCommitParent());
-            }
+        String base = GRAPH.mergeBase(Branch.tip(Branch.current()),
+                Branch.tip(name));
+        if (base == null) {
+            return Branch.load(name).getCommit();
         }
-        return currentBranch.getCommit();
+        return Commit.load(base);
     }
 
     public static String cerealC(Commit s) {
-        return Utils.sha1(Utils.serialize(s));
+        return s.getId();
     }
 
-    public static void lcaChecker(Commit splitPoint,
-                                  Commit currBranch) throws IOException {
-        if (cerealC(splitPoint).equals(cerealC(currBranch))) {
+    /** Returns true iff every commit reachable from branch A is
+     *  reachable from branch B. */
+    public static boolean containedIn(Branch a, Branch b) {
+        Bitmap reachA = BITMAPS.reachable(a.getName(), a.getCommitId());
+        Bitmap reachB = BITMAPS.reachable(b.getName(), b.getCommitId());
+        return reachA.andNot(reachB).isEmpty();
+    }
+
+    public static void lcaChecker(Branch givenBranch,
+                                  Branch cB) throws IOException {
+        if (containedIn(givenBranch, cB)) {
             System.out.println("Given branch is an "
                     + "ancestor of the current branch.");
             return;
         }
     }
 
+    /** Returns the id working file B would have as a blob, hashing its
+     *  raw bytes exactly as the object store does. */
     public static String rSha1(File b) {
-        return Utils.sha1(Utils.readContents(b));
-    }
-
-    public static String rRSha1(File b) {
-        return Utils.sha1(Utils.readContentsAsString(b));
+        return Utils.sha1(b);
     }
 
     public static void mergeErrorChecking(String name) {
-        ArrayList<String> branchNames = new ArrayList<String>();
-        for (File b : BRANCHES.listFiles()) {
-            branchNames.add(b.getName());
-        }
-        if (!branchNames.contains(name)) {
+        Branch cB = Branch.load(name);
+        if (cB == null) {
             throw new GitletException("A branch with "
                     + "that name does not exist.");
         }
-        Branch cB = Utils.readObject(Utils.join(BRANCHES,
-                name), Branch.class);
-        Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
-        if (STAGED_ADDITION.listFiles().length > 0
-                || STAGED_RM.listFiles().length > 0) {
+        Commit deserializingHead = Branch.head();
+        if (!Index.get().isClean()) {
             throw new GitletException("You have "
                     + "uncommitted changes.");
         }
-        for (File y : CWD.listFiles()) {
-            if (!y.getName().equals(".gitlet")) {
-                String h = cB.getCommit().getCM().get(y.getName());
-                if (!deserializingHead.getCM().containsKey(y.getName())
-                        && !rSha1(y).equals(h)
-                        && cB.getCommit().getCM().containsKey(y.getName())) {
-                    throw new GitletException("There is an untracked "
-                            + "file in the way; "
-                            + "delete it, or add and commit it first.");
-                }
+        for (Entry<String, File> y : workingFiles().entrySet()) {
+            String h = cB.getCommit().getCM().get(y.getKey());
+            if (!deserializingHead.getCM().containsKey(y.getKey())
+                    && cB.getCommit().getCM().containsKey(y.getKey())
+                    && !rSha1(y.getValue()).equals(h)) {
+                throw new GitletException("There is an untracked "
+                        + "file in the way; "
+                        + "delete it, or add and commit it first.");
             }
         }
-        for (File m : BRANCHES.listFiles()) {
-            Branch deserializedM = Utils.readObject(m, Branch.class);
-            if (m.getName().equals(name) && deserializedM.getActive()) {
-                throw new GitletException("Cannot merge a branch with itself.");
-            }
+        if (cB.getActive()) {
+            throw new GitletException("Cannot merge a branch with itself.");
         }
     }
 
@@ -287,15 +421,9 @@ public class Main {
                     && splitPoint.getCM().containsKey(e.getKey())
                     &&
                     !splitPoint.getCM().get(e.getKey()).equals(e.getValue())) {
-                File f = Utils.join(CWD, e.getKey());
                 TreeMap<String, String> rt = cB.getCommit().getCM();
-                String mk = "<<<<<<< HEAD\n"
-                        + Utils.readContentsAsString(Utils.join(BLOBS,
-                        rt.get(e.getKey()) + ".txt"))
-                        + "=======\n"
-                        + ">>>>>>>\n";
-                Utils.writeContents(f, mk);
-                add(f.getName());
+                writeWorking(e.getKey(), conflict(rt.get(e.getKey()), null));
+                add(e.getKey());
                 return true;
             }
         }
@@ -304,7 +432,7 @@ public class Main {
 
     public static void fastForward(Commit splitPoint, Branch cB,
                                    Branch givenBranch) throws IOException {
-        if (splitPoint.getCM().equals(cB.getCommit().getCM())) {
+        if (containedIn(cB, givenBranch)) {
             String[] a = new String[]{"checkout", givenBranch.getName()};
             checkout(a);
             throw new GitletException("Current branch fast-forwarded.");
@@ -332,36 +460,38 @@ public class Main {
 
     }
 
-    public static String insides(String g,
+    public static byte[] insides(String g,
                                  TreeMap<String, String> rt,
                                  String e) {
-        String mk = "<<<<<<< HEAD\n"
-                + Utils.readContentsAsString(Utils.join(BLOBS,
-                g + ".txt")) + "=======\n"
-                + Utils.readContentsAsString(Utils.join(BLOBS,
-                rt.get(e) + ".txt"))
-                + ">>>>>>>\n";
-        return mk;
+        return conflict(g, rt.get(e));
+    }
 
+    /** Returns the contents of a file in conflict whose versions in the
+     *  current and given branches are the blobs OURS and THEIRS, either
+     *  of which may be null for a deleted file.  The blobs are copied
+     *  byte for byte. */
+    public static byte[] conflict(String ours, String theirs) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.writeBytes("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+        if (ours != null) {
+            result.writeBytes(STORE.read(ours));
+        }
+        result.writeBytes("=======\n".getBytes(StandardCharsets.UTF_8));
+        if (theirs != null) {
+            result.writeBytes(STORE.read(theirs));
+        }
+        result.writeBytes(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        return result.toByteArray();
     }
     public static void merge(String name) throws IOException {
         Boolean conflict = false;
         mergeErrorChecking(name);
-        Branch givenBranch = Utils.readObject(Utils.join(BRANCHES, name),
-                Branch.class);
-        Branch cB = Utils.readObject(Utils.join(BRANCHES,
-                name), Branch.class);
-        for (File f : BRANCHES.listFiles()) {
-            Branch deserializedF = Utils.readObject(f, Branch.class);
-            if (deserializedF.getActive()) {
-                cB = Utils.readObject(Utils.join(BRANCHES,
-                        f.getName()), Branch.class);
-                break;
-            }
-        }
+        Branch givenBranch = Branch.load(name);
+        Branch cB = Branch.load(Branch.current());
         Commit splitPoint = lca(name);
-        lcaChecker(splitPoint, givenBranch.getCommit());
+        lcaChecker(givenBranch, cB);
         fastForward(splitPoint, cB, givenBranch);
+        JOURNAL.begin("merge", cB.getCommitId(), givenBranch.getCommitId());
         splitPointHelper(splitPoint, givenBranch, cB);
         conflict = givenBranchMeth(splitPoint, cB, givenBranch);
         for (Entry<String, String> e
@@ -381,18 +511,14 @@ public class Main {
                     && !a.equals(e.getValue()) && !a.equals(g)
                     && cB.getCommit().getCM().containsKey(e.getKey())
                     && !g.equals(e.getValue())) {
-                File f = Utils.join(CWD, e.getKey());
-                String mk = insides(g, rt, e.getKey());
-                Utils.writeContents(f, mk);
-                add(f.getName());
+                writeWorking(e.getKey(), insides(g, rt, e.getKey()));
+                add(e.getKey());
                 conflict = true;
             } else if (cB.getCommit().getCM().containsKey(e.getKey())
                     && !g.equals(e.getValue())
                     && !splitPoint.getCM().containsKey(e.getKey())) {
-                File f = Utils.join(CWD, e.getKey());
-                String mk = insides(g, rt, e.getKey());
-                Utils.writeContents(f, mk);
-                add(f.getName());
+                writeWorking(e.getKey(), insides(g, rt, e.getKey()));
+                add(e.getKey());
                 conflict = true;
             } else if (!cB.getCommit().getCM().containsKey(e.getKey())
                     && splitPoint.getCM().containsKey(e.getKey())
@@ -401,16 +527,12 @@ public class Main {
             }
         }
         ending(conflict, givenBranch, cB);
+        JOURNAL.end();
     }
     public static Boolean merge12(TreeMap<String,
             String> rt, String e) throws IOException {
-        File f = Utils.join(CWD, e);
-        String mk = "<<<<<<< HEAD\n" + "=======\n"
-                + Utils.readContentsAsString(Utils.join(BLOBS,
-                rt.get(e) + ".txt"))
-                + ">>>>>>>\n";
-        Utils.writeContents(f, mk);
-        add(f.getName());
+        writeWorking(e, conflict(null, rt.get(e)));
+        add(e);
         return true;
     }
 
@@ -430,107 +552,75 @@ public class Main {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        ArrayList<File> branches = new ArrayList<File>();
         System.out.println("=== Branches ===");
-        for (File f : BRANCHES.listFiles()) {
-            branches.add(f);
-        }
-        Collections.sort(branches);
-        for (File f : branches) {
-            Branch deserializingF = Utils.readObject(f, Branch.class);
-            if (deserializingF.getActive()) {
-                System.out.println("*" + f.getName());
+        String current = Branch.current();
+        for (String name : Branch.names()) {
+            if (name.equals(current)) {
+                System.out.println("*" + name);
             } else {
-                System.out.println(f.getName());
+                System.out.println(name);
             }
         }
         System.out.println("");
         System.out.println("=== Staged Files ===");
-        ArrayList<String> stagedFiles = new ArrayList<String>();
-        for (File f : STAGED_ADDITION.listFiles()) {
-            stagedFiles.add(f.getName());
-        }
-
-        Collections.sort(stagedFiles);
+        Index index = Index.get();
+        ArrayList<String> stagedFiles =
+                new ArrayList<String>(index.added().keySet());
         for (String f : stagedFiles) {
             System.out.println(f);
         }
         System.out.println("");
         System.out.println("=== Removed Files ===");
-        ArrayList<File> removedFiles = new ArrayList<File>();
-        for (File f : STAGED_RM.listFiles()) {
-            removedFiles.add(f);
-        }
-        Collections.sort(removedFiles);
-        for (File f : removedFiles) {
-            System.out.println(f.getName());
+        for (String f : index.removed()) {
+            System.out.println(f);
         }
         System.out.println("");
         System.out.println("=== Modifications Not Staged For Commit ===");
-        statusHelp(stagedFiles);
+        TreeMap<String, File> cwd = workingFiles();
+        TreeMap<String, String> head =
+                Branch.head().getCM();
+        HashSet<String> staged = new HashSet<String>(stagedFiles);
+        statusHelp(staged, cwd, head);
         System.out.println("=== Untracked Files ===");
-        for (File f : CWD.listFiles()) {
-            Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
-            if (!f.getName().equals(".gitlet")) {
-                if (!deserializingHead.getCM().containsKey(f.getName())
-                        && !stagedFiles.contains(f.getName())) {
-                    System.out.println(f.getName());
-                }
+        for (String f : cwd.keySet()) {
+            if (!head.containsKey(f) && !staged.contains(f)) {
+                System.out.println(f);
             }
         }
         System.out.println("");
     }
 
-    public static void statusHelp(ArrayList<String> stagedFiles) {
-        ArrayList<String> cwdfiles = new ArrayList<String>();
-        for (File f : CWD.listFiles()) {
-            if (!f.getName().equals(".gitlet")) {
-                cwdfiles.add(f.getName());
+    public static void statusHelp(HashSet<String> stagedFiles,
+                                  TreeMap<String, File> cwd,
+                                  TreeMap<String, String> head) {
+        Index index = Index.get();
+        HashSet<String> cwdblobs = new HashSet<String>();
+        for (Entry<String, File> f : cwd.entrySet()) {
+            cwdblobs.add(index.hash(f.getKey(), f.getValue()));
+        }
+        TreeSet<String> mods = new TreeSet<String>();
+        for (String f : cwd.keySet()) {
+            String p = head.get(f);
+            if (p != null
+                    && !stagedFiles.contains(f)
+                    && !cwdblobs.contains(p)) {
+                mods.add(f + " (modified)");
+            } else if (stagedFiles.contains(f)
+                    && !cwdblobs.contains(index.added().get(f))) {
+                mods.add(f + " (modified)");
             }
         }
-        Collections.sort(cwdfiles);
-        ArrayList<String> cwdblobs = new ArrayList<String>();
-        for (File f : CWD.listFiles()) {
-            if (!f.getName().equals(".gitlet")) {
-                String b = rRSha1(f);
-                cwdblobs.add(b);
-            }
-        }
-        ArrayList<String> removal = new ArrayList<String>();
-        for (File f : STAGED_RM.listFiles()) {
-            removal.add(f.getName());
-        }
-        ArrayList<String> mods = new ArrayList<String>();
-        for (File f : CWD.listFiles()) {
-            Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
-            if (!f.getName().equals(".gitlet")) {
-                String p = deserializingHead.getCM().get(f.getName());
-                if (deserializingHead.getCM().containsKey(f.getName())
-                        && !stagedFiles.contains(f.getName())
-                        && !cwdblobs.contains(p)) {
-                    mods.add(f.getName() + " (modified)");
-                } else if (stagedFiles.contains(f.getName())
-                        &&
-                        !cwdblobs.contains(rRSha1(Utils.join(STAGED_ADDITION,
-                                f.getName())))) {
-                    mods.add(f.getName() + " (modified)");
-                }
-            }
-        }
-        for (File f : STAGED_ADDITION.listFiles()) {
-            if (!cwdfiles.contains(f.getName())) {
-                mods.add(f.getName() + " (deleted)");
+        for (String f : stagedFiles) {
+            if (!cwd.containsKey(f)) {
+                mods.add(f + " (deleted)");
             }
         }
-        Commit deserializingHead1 =
-                Utils.readObject(HEAD, Commit.class);
-        for (Entry<String, String> e : deserializingHead1.getCM().entrySet()) {
-            if (!removal.contains(e.getKey())
-                    && !cwdfiles.contains(e.getKey())) {
-                mods.add(e.getKey() + " (deleted)");
+        for (String f : head.keySet()) {
+            if (!index.removed().contains(f)
+                    && !cwd.containsKey(f)) {
+                mods.add(f + " (deleted)");
             }
         }
-        Collections.sort(mods);
         for (String s : mods) {
             System.out.println(s);
         }
@@ -538,51 +628,95 @@ public class Main {
     }
 
     public static void add(String name) throws IOException {
-        Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
+        Commit deserializingHead = Branch.head();
         File f = Utils.join(CWD, name);
         if (!f.exists()) {
             System.out.println("File does not exist.");
             return;
         }
-        String b = rRSha1(f);
-        File yu = Utils.join(STAGED_RM, name);
-        if (yu.exists()) {
-            yu.delete();
+        if (f.isDirectory()) {
+            String prefix = CWD.toPath().relativize(f.toPath()).toString();
+            for (String p : workingFiles().keySet()) {
+                if (prefix.isEmpty() || p.startsWith(prefix + "/")) {
+                    add(p);
+                }
+            }
+            return;
         }
+        Index index = Index.get();
+        String b = index.hash(name, f);
+        index.unremove(name);
         if (!deserializingHead.getCM().containsKey(name)
                 || !deserializingHead.getCM().get(name).equals(b)) {
-            File x = Utils.join(CWD, name);
-            File y = Utils.join(STAGED_ADDITION, name);
-            if (!y.exists()) {
-                y.createNewFile();
+            if (!STORE.contains(b)) {
+                b = STORE.write(f);
             }
-            Utils.writeContents(y, Utils.readContents(x));
+            index.add(name, b);
         }
     }
 
     public static void rm(String args) throws IOException {
-        File x = Utils.join(STAGED_ADDITION, args);
-        File y = Utils.join(CWD, args);
-        Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
-        if (!x.exists() && !deserializingHead.getCM().containsKey(args)) {
+        Index index = Index.get();
+        boolean staged = index.added().containsKey(args);
+        Commit deserializingHead = Branch.head();
+        if (!staged && !deserializingHead.getCM().containsKey(args)) {
             throw new GitletException("No reason to remove the file.");
         }
-        if (x.exists() && !deserializingHead.getCM().containsKey(args)) {
-            x.delete();
+        index.unadd(args);
+        if (deserializingHead.getCM().containsKey(args)) {
+            index.remove(args);
+            deleteWorking(args);
         }
-        if (x.exists() && deserializingHead.getCM().containsKey(args)) {
-            File n = Utils.join(STAGED_RM, args);
-            n.createNewFile();
-            x.delete();
+    }
+
+    /** Returns every file in the working directory and its
+     *  subdirectories, except those under .gitlet, keyed by its
+     *  slash-separated path relative to CWD. */
+    public static TreeMap<String, File> workingFiles() {
+        TreeMap<String, File> result = new TreeMap<String, File>();
+        workingFiles(CWD, "", result);
+        return result;
+    }
+
+    /** Adds the files under DIR to RESULT, keyed by their paths with
+     *  PREFIX prepended. */
+    private static void workingFiles(File dir, String prefix,
+                                     TreeMap<String, File> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
         }
-        if (deserializingHead.getCM().containsKey(args)) {
-            File z = Utils.join(STAGED_RM, args);
-            z.createNewFile();
-            Utils.restrictedDelete(y);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                if (!f.equals(GITLET)) {
+                    workingFiles(f, prefix + f.getName() + "/", result);
+                }
+            } else if (f.isFile()) {
+                result.put(prefix + f.getName(), f);
+            }
         }
-        if (x.exists()) {
-            x.delete();
+    }
+
+    /** Deletes working file NAME, then any of its directories left
+     *  empty. */
+    public static void deleteWorking(String name) {
+        File f = Utils.join(CWD, name);
+        if (!f.isFile()) {
+            return;
         }
+        f.delete();
+        File d = f.getParentFile();
+        while (!d.equals(CWD) && d.delete()) {
+            d = d.getParentFile();
+        }
+    }
+
+    /** Writes CONTENTS to working file NAME, creating its directories as
+     *  needed. */
+    public static void writeWorking(String name, byte[] contents) {
+        File f = Utils.join(CWD, name);
+        f.getParentFile().mkdirs();
+        Utils.writeContents(f, contents);
     }
 
     public static void exitWithError(String message) {
@@ -594,129 +728,153 @@ public class Main {
 
     public static void reset(String args) throws IOException {
         args = shorten(args);
-        ArrayList<String> fileNames = new ArrayList<String>();
-
-        for (File f : COMMITS.listFiles()) {
-            fileNames.add(f.getName());
-
-        }
-        if (!fileNames.contains(args)) {
+        if (!Commit.exists(args)) {
             throw new GitletException("No commit with that id exists.");
         }
-        Commit cell = Utils.readObject(Utils.join(COMMITS, args), Commit.class);
-        Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
+        Commit cell = Commit.load(args);
+        Commit deserializingHead = Branch.head();
 
-        for (File y : CWD.listFiles()) {
-            if (!y.getName().equals(".gitlet")) {
-                if (!deserializingHead.getCM().containsKey(y.getName())
-                        &&
-                        !rSha1(y).equals(cell.getCM().get(y.getName()))
-                        && cell.getCM().containsKey(y.getName())) {
-                    throw new GitletException("There is an "
-                            + "untracked file in the way; "
-                            + "delete it, or add and commit it first.");
-
-                }
-                if (!cell.getCM().containsKey(y.getName())) {
-                    Utils.restrictedDelete(y);
-                }
+        TreeMap<String, File> cwd = workingFiles();
+        for (Entry<String, File> y : cwd.entrySet()) {
+            if (!deserializingHead.getCM().containsKey(y.getKey())
+                    && cell.getCM().containsKey(y.getKey())
+                    && !rSha1(y.getValue()).equals(
+                            cell.getCM().get(y.getKey()))) {
+                throw new GitletException("There is an "
+                        + "untracked file in the way; "
+                        + "delete it, or add and commit it first.");
 
             }
         }
-        for (Entry<String, String> e : deserializingHead.getCM().entrySet()) {
-            if (!cell.getCM().containsKey(e.getKey())) {
-                if (Utils.join(CWD, e.getKey()).exists()) {
-                    Utils.restrictedDelete(Utils.join(CWD, e.getKey()));
-                }
+        JOURNAL.begin("reset", deserializingHead.getId(), cell.getId());
+        switchFiles(deserializingHead, cell);
+        Branch.advance(cell.getId());
+        Index.get().clearAdded();
+        JOURNAL.end();
+
+    }
+
+    /** Prints the first-parent history of HEAD, newest first.  ARGS may
+     *  hold "-n COUNT" to stop after COUNT commits and "--since DATE" to
+     *  stop at the first commit older than DATE.  Only one commit is held
+     *  in memory at a time. */
+    public static void log(String[] args) {
+        int limit = Integer.MAX_VALUE;
+        Date since = null;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new GitletException("Incorrect operands.");
             }
-        }
-        for (File f : BRANCHES.listFiles()) {
-            Branch deserializingF = Utils.readObject(f, Branch.class);
-            if (deserializingF.getActive()) {
-                for (File a : COMMITS.listFiles()) {
-                    if (a.getName().equals(args)) {
-                        deserializingF.commitSetter(a);
-                        Utils.writeObject(HEAD, Utils.readObject(a,
-                                Commit.class));
-                        deserializingF.branchSave();
-                    }
+            switch (args[i]) {
+            case "-n":
+                try {
+                    limit = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException excp) {
+                    throw new GitletException("Incorrect operands.");
                 }
+                break;
+            case "--since":
+                since = parseDate(args[i + 1]);
+                break;
+            default:
+                throw new GitletException("Incorrect operands.");
             }
         }
-        for (File l : STAGED_ADDITION.listFiles()) {
-            l.delete();
-        }
-        for (Entry<String, String> e : cell.getCM().entrySet()) {
-            String[] a = new String[]{"checkout", "--", e.getKey()};
-            checkout(a);
+        String id = Branch.tip(Branch.current());
+        for (int n = 0; id != null && n < limit; n += 1) {
+            Commit c = Commit.load(id);
+            if (since != null && c.getTime().before(since)) {
+                break;
+            }
+            logEntry(c);
+            id = c.getParentId();
         }
-
     }
 
-    public static void log() {
-        Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
-        while (deserializingHead != null) {
-            System.out.println("===");
-            System.out.println("commit " + cerealC(deserializingHead));
-            System.out.println("Date: " + deserializingHead.getDate());
-            System.out.println(deserializingHead.getMessage());
-            System.out.println("");
-            deserializingHead = deserializingHead.getParent();
+    /** Returns the time named by DATE, given either as yyyy-MM-dd or in
+     *  the format log prints. */
+    private static Date parseDate(String date) {
+        for (String pattern
+                 : new String[] {"yyyy-MM-dd", Commit.DATE_PATTERN}) {
+            try {
+                return new SimpleDateFormat(pattern).parse(date);
+            } catch (ParseException excp) {
+                continue;
+            }
         }
+        throw new GitletException("Incorrect operands.");
     }
 
-    public static void find(String message) {
-        boolean p = true;
-        for (File f : COMMITS.listFiles()) {
-            Commit deserializingfile = Utils.readObject(f, Commit.class);
-            if (deserializingfile.getMessage().equals(message)) {
-                System.out.println(f.getName());
-                p = false;
-            }
+    /** Prints the ids of the commits found by ARGS: "MESSAGE" for those
+     *  with exactly that message, "--prefix PREFIX" for those whose
+     *  message starts with PREFIX, and "--word WORD" for those whose
+     *  message contains WORD. */
+    public static void find(String[] args) {
+        if (MESSAGES.missing()) {
+            reindex();
+        }
+        TreeSet<String> found;
+        if (args.length == 2) {
+            found = MESSAGES.exact(args[1]);
+        } else if (args.length == 3 && args[1].equals("--prefix")) {
+            found = MESSAGES.prefix(args[2]);
+        } else if (args.length == 3 && args[1].equals("--word")) {
+            found = MESSAGES.word(args[2]);
+        } else {
+            throw new GitletException("Incorrect operands.");
         }
-        if (p) {
+        if (found.isEmpty()) {
             throw new GitletException("Found no commit with that message.");
         }
+        for (String id : found) {
+            System.out.println(id);
+        }
+    }
 
+    /** Rebuild the message search index from every commit. */
+    public static void reindex() {
+        ArrayList<String> ids = new ArrayList<>();
+        for (int pos = 0; pos < GRAPH.size(); pos += 1) {
+            ids.add(GRAPH.id(pos));
+        }
+        MESSAGES.rebuild(ids);
     }
+
+    /** Move every branch ref into the packed-refs file, so listing and
+     *  looking up branches no longer opens one file per branch. */
+    public static void packRefs() {
+        Branch.pack();
+    }
+
     public static void rmBranch(String name) {
-        for (File f : BRANCHES.listFiles()) {
-            Branch deserializingF = Utils.readObject(f,
-                    Branch.class);
-            if (f.getName().equals(name)) {
-                if (deserializingF.getActive()) {
-                    throw new GitletException("Cannot "
-                            + "remove the current branch.");
-                }
-                f.delete();
-                return;
-            }
+        if (!Branch.exists(name)) {
+            throw new GitletException("A branch with that name "
+                    + "does not exist.");
+        }
+        if (name.equals(Branch.current())) {
+            throw new GitletException("Cannot remove the current branch.");
         }
-        throw new GitletException("A branch with that name does not exist.");
+        Branch.delete(name);
     }
     public static void branch(String name) throws IOException {
-        for (File f : BRANCHES.listFiles()) {
-            if (f.getName().equals(name)) {
-                throw new GitletException("A branch "
-                        + "with that name already exists.");
-            }
+        if (Branch.exists(name)) {
+            throw new GitletException("A branch "
+                    + "with that name already exists.");
         }
-        Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
-        Branch x = new Branch(name, false, deserializingHead);
+        Branch x = new Branch(name, false, Branch.head());
         x.branchSave();
     }
 
     public static String shorten(String id) {
-        for (File f : COMMITS.listFiles()) {
-            if (f.getName().startsWith(id)) {
-                return f.getName();
-            }
+        String full = COMMIT_INDEX.resolve(id);
+        if (full == null) {
+            return id;
         }
-        return id;
+        return full;
     }
 
     public static void existsPrev(String name) {
-        Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
+        Commit deserializingHead = Branch.head();
         if (!deserializingHead.getCM().containsKey(name)) {
             throw new GitletException("File does not exist in that commit.");
         }
@@ -725,18 +883,14 @@ public class Main {
     public static void checkout(String[] args) throws IOException {
         if (args.length == 3) {
             existsPrev(args[2]);
-            Commit deserializingHead = Utils.readObject(HEAD, Commit.class);
+            Commit deserializingHead = Branch.head();
             String nameOfFile = deserializingHead.getCM().get(args[2]);
-            File fileInBlob = Utils.join(BLOBS, nameOfFile + ".txt");
-            String b = Utils.readContentsAsString(fileInBlob);
-            Utils.writeContents(Utils.join(CWD, args[2]), b);
+            STORE.copyTo(nameOfFile, Utils.join(CWD, args[2]));
         } else if (args.length == 4) {
             if (args[1].length() < Utils.UID_LENGTH) {
                 args[1] = shorten(args[1]);
             }
-            File f = Utils.join(COMMITS, args[1]);
-
-            if (!f.exists()) {
+            if (!Commit.exists(args[1])) {
                 System.out.println("No commit with that id exists.");
                 return;
             }
@@ -744,370 +898,345 @@ public class Main {
                 throw new GitletException("Incorrect operands.");
 
             }
-            Commit deserializingHead = Utils.readObject(f, Commit.class);
+            Commit deserializingHead = Commit.load(args[1]);
             if (!deserializingHead.getCM().containsKey(args[3])) {
                 throw new GitletException("File does "
                         + "not exist in that commit.");
             }
             String nameOfFile = deserializingHead.getCM().get(args[3]);
-            File fileInBlob = Utils.join(BLOBS, nameOfFile + ".txt");
-            String b = Utils.readContentsAsString(fileInBlob);
-            Utils.writeContents(Utils.join(CWD, args[3]), b);
+            STORE.copyTo(nameOfFile, Utils.join(CWD, args[3]));
         } else if (args.length == 2) {
-            File x = Utils.join(BRANCHES, args[1]);
-            checkout2(x);
+            checkout2(args[1]);
 
         }
     }
 
-    public static void checkout2(File x) throws IOException {
-        if (!x.exists()) {
+    public static void checkout2(String name) throws IOException {
+        Branch dF = Branch.load(name);
+        if (dF == null) {
             throw new GitletException("No such branch exists.");
         }
-        Branch dF = Utils.readObject(x, Branch.class);
-        Commit dH = Utils.readObject(HEAD, Commit.class);
-        for (File y : CWD.listFiles()) {
-            if (!y.getName().equals(".gitlet")) {
-                TreeMap<String, String> m = dF.getCommit().getCM();
-                if (!dH.getCM().containsKey(y.getName())
-                        && m.containsKey(y.getName())) {
-                    throw new GitletException("There "
-                            + "is an untracked file in the way; delete it, "
-                            + "or add and commit it first.");
-                }
+        Commit dH = Branch.head();
+        for (String y : workingFiles().keySet()) {
+            TreeMap<String, String> m = dF.getCommit().getCM();
+            if (!dH.getCM().containsKey(y) && m.containsKey(y)) {
+                throw new GitletException("There "
+                        + "is an untracked file in the way; delete it, "
+                        + "or add and commit it first.");
             }
         }
         if (dF.getActive()) {
             System.out.println("No need to checkout the current branch.");
             return;
         } else {
-            for (File f : BRANCHES.listFiles()) {
-                Branch deserializingZ = Utils.readObject(f, Branch.class);
-                deserializingZ.falseActive();
-                deserializingZ.branchSave();
-            }
-            dF.trueActive();
-            dF.branchSave();
-            for (Entry<String, String> e
-                    : dF.getCommit().getCM().entrySet()) {
-                String nameOfFile = e.getValue();
-                File fileInBlob = Utils.join(BLOBS, nameOfFile + ".txt");
-                String b = Utils.readContentsAsString(fileInBlob);
-                Utils.writeContents(Utils.join(CWD, e.getKey()), b);
-            }
-            Commit dH1 = Utils.readObject(HEAD,
-                    Commit.class);
-            for (Entry<String, String> e
-                    : dH1.getCM().entrySet()) {
-                TreeMap<String, String> m = dF.getCommit().getCM();
-                if (!m.containsKey(e.getKey())) {
-                    File n = Utils.join(CWD, e.getKey());
-                    Utils.restrictedDelete(n);
-                }
-            }
-            for (File f : STAGED_ADDITION.listFiles()) {
-                f.delete();
-            }
-            Utils.writeObject(HEAD, dF.getCommit());
+            JOURNAL.begin("checkout", dH.getId(), dF.getCommitId(), name);
+            switchFiles(dH, dF.getCommit());
+            Branch.setCurrent(name);
+            Index.get().clearAdded();
+            JOURNAL.end();
         }
 
     }
-    public static ArrayList<Integer> l1(File f, File m) {
-        Diff d = new Diff();
-        d.setSequences(f, m);
-        int[] sequence = d.diffs();
-        ArrayList<Integer> a = new ArrayList<Integer>();
-        for (int i = 0; i < sequence.length; i++) {
-            if (i % 4 == 0) {
-                a.add(sequence[i]);
+    /** Replace the files of commit FROM in the working directory with
+     *  those of commit TO.  Only paths whose blobs differ between the two
+     *  trees are deleted or written, except that a file the two commits
+     *  share is also written if its working copy is missing or has been
+     *  changed. */
+    public static void switchFiles(Commit from, Commit to) {
+        TreeMap<String, String[]> delta = new TreeMap<String, String[]>();
+        Tree.changes(from.getTree(), to.getTree(), "", delta);
+        TreeMap<String, String> writes = new TreeMap<String, String>();
+        Index index = Index.get();
+        for (Entry<String, String> e : to.getCM().entrySet()) {
+            File f = Utils.join(CWD, e.getKey());
+            if (delta.containsKey(e.getKey()) || !f.isFile()
+                    || !index.hash(e.getKey(), f).equals(e.getValue())) {
+                writes.put(e.getKey(), e.getValue());
             }
         }
-        return a;
-    }
-
-    public static ArrayList<Integer> n1(File f, File m) {
-        Diff d = new Diff();
-        d.setSequences(f, m);
-        int[] sequence = d.diffs();
-        ArrayList<Integer> a = new ArrayList<Integer>();
-        for (int i = 0; i < sequence.length; i++) {
-            if (i % 4 == 1) {
-                a.add(sequence[i]);
+        for (Entry<String, String[]> e : delta.entrySet()) {
+            if (e.getValue()[1] == null) {
+                deleteWorking(e.getKey());
             }
         }
-        return a;
+        restore(writes);
     }
 
-    public static ArrayList<Integer> l2(File f, File m) {
-        Diff d = new Diff();
-        d.setSequences(f, m);
-        int[] sequence = d.diffs();
-        ArrayList<Integer> a = new ArrayList<Integer>();
-        for (int i = 0; i < sequence.length; i++) {
-            if (i % 4 == 2) {
-                a.add(sequence[i]);
+    /** Write each blob in FILES, a map from working file name to blob id,
+     *  to its file.  Directories are made first; the files are then
+     *  written on up to CHECKOUT_THREADS threads. */
+    public static void restore(TreeMap<String, String> files) {
+        for (String name : files.keySet()) {
+            Utils.join(CWD, name).getParentFile().mkdirs();
+        }
+        if (CHECKOUT_THREADS <= 1 || files.size() < 2) {
+            for (Entry<String, String> e : files.entrySet()) {
+                STORE.copyTo(e.getValue(), Utils.join(CWD, e.getKey()));
             }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(CHECKOUT_THREADS);
+        try {
+            pool.submit(() -> files.entrySet().parallelStream().forEach(e ->
+                    STORE.copyTo(e.getValue(), Utils.join(CWD, e.getKey()))))
+                .join();
+        } finally {
+            pool.shutdownNow();
         }
-        return a;
     }
 
-    public static ArrayList<Integer> n2(File f, File m) {
-        Diff d = new Diff();
-        d.setSequences(f, m);
-        int[] sequence = d.diffs();
-        ArrayList<Integer> a = new ArrayList<Integer>();
-        for (int i = 0; i < sequence.length; i++) {
-            if (i % 4 == 3) {
-                a.add(sequence[i]);
+    public static Branch bitchy() {
+        return Branch.load(Branch.current());
+    }
+    public static void diffWorker1(String e, String m, PrintWriter out) {
+        out.println("diff --git a/" + e + " b/" + m);
+        out.println("--- a/" + e);
+        out.println("+++ b/" + m);
+    }
+    /** Print the hunks of D on OUT, each as a header line followed by the
+     *  lines it removes and the lines it adds. */
+    public static void printHunks(FileDiff d, PrintWriter out) {
+        for (int k = 0; k < d.size(); k += 1) {
+            int l1 = d.start1(k), n1 = d.length1(k);
+            int l2 = d.start2(k), n2 = d.length2(k);
+            String from, to;
+            if (n1 == 0) {
+                from = l1 + (n2 > 1 ? ", " : ",") + n1;
+            } else if (n1 == 1) {
+                from = Integer.toString(l1 + 1);
+            } else {
+                from = (l1 + 1) + "," + n1;
+            }
+            if (n2 == 0) {
+                to = (n1 == 1 ? l2 : l2 + 1) + "," + n2;
+            } else if (n2 == 1) {
+                to = Integer.toString(l2 + 1);
+            } else {
+                to = (l2 + 1) + "," + n2;
+            }
+            out.println("@@ -" + from + " +" + to + " @@");
+            for (String line : d.removed(k)) {
+                out.println("-" + line);
+            }
+            for (String line : d.added(k)) {
+                out.println("+" + line);
             }
         }
-        return a;
     }
-    public static void linePrinter(int l1, int n1, int l2,
-                                   int n2, File f, File m) {
-        Diff d = new Diff();
-        d.setSequences(f, m);
-        for (int i = 1; i <= n1; i++) {
-            System.out.println("-" + d.get1(l1 + i - 1));
-        }
-        for (int i = 1; i <= n2; i++) {
-            System.out.println("+" + d.get2(l2 + i - 1));
+
+    /** Print the differences between the files of commit C and the
+     *  working directory. */
+    public static void diffWorker(Commit c) {
+        ArrayList<Consumer<PrintWriter>> jobs = new ArrayList<>();
+        for (Entry<String, String> e : c.getCM().entrySet()) {
+            jobs.add(out -> {
+                File w = Utils.join(CWD, e.getKey());
+                if (!w.exists()) {
+                    printDeleted(e.getKey(), STORE.readLines(e.getValue()),
+                                 out);
+                } else if (!e.getValue().equals(Utils.sha1(w))) {
+                    diffWorker1(e.getKey(), e.getKey(), out);
+                    printHunks(new FileDiff(STORE.readLines(e.getValue()),
+                                            lines(w)), out);
+                }
+            });
         }
+        printInOrder(jobs);
     }
 
-    public static Branch bitchy() {
-        for (File f : BRANCHES.listFiles()) {
-            Branch dF = Utils.readObject(f, Branch.class);
-            if (dF.getActive()) {
-                return dF;
+    /** Print the output of each of JOBS, in order.  Up to DIFF_THREADS
+     *  of them run at once, each writing to its own buffer; the output is
+     *  the same as if they had run one after another. */
+    static void printInOrder(List<Consumer<PrintWriter>> jobs) {
+        if (DIFF_THREADS <= 1) {
+            PrintWriter out = new PrintWriter(System.out);
+            for (Consumer<PrintWriter> job : jobs) {
+                job.accept(out);
+                out.flush();
             }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(DIFF_THREADS);
+        try {
+            ArrayDeque<ForkJoinTask<String>> running = new ArrayDeque<>();
+            int next = 0;
+            while (next < jobs.size() || !running.isEmpty()) {
+                while (next < jobs.size()
+                       && running.size() < 4 * DIFF_THREADS) {
+                    Consumer<PrintWriter> job = jobs.get(next);
+                    running.add(pool.submit(() -> {
+                        StringWriter text = new StringWriter();
+                        PrintWriter out = new PrintWriter(text);
+                        job.accept(out);
+                        out.flush();
+                        return text.toString();
+                    }));
+                    next += 1;
+                }
+                System.out.print(running.remove().join());
+            }
+        } finally {
+            pool.shutdownNow();
         }
-        return null;
-    }
-    public static void diffWorker1(String e, String m) {
-        System.out.println("diff --git a/" + e + " b/" + m);
-        System.out.println("--- a/" + e);
-        System.out.println("+++ b/" + m);
-    }
-    public static void h1(int l1V, int n1,
-                          int l2, int l2V1, int n2, File f, File m) {
-        System.out.println("@@ -" + l1V + ","
-                + n1 + " " + "+" + l2V1 + " " + "@@");
-        linePrinter(l1V, n1, l2, n2, f, m);
-    }
-    public static void h2(int l1V, int l1V1,
-                          int l2, int n1, int n2, File f, File m) {
-        System.out.println("@@ -" + l1V1 + " "
-                + "+" + l2 + "," + n2 + " " + "@@");
-        linePrinter(l1V, n1, l2, n2, f, m);
-    }
-    public static void h3(int l1V, int n1V, int l2V1, int n2V) {
-        System.out.println("@@ -" + l1V + "," + n1V + " +"
-                + l2V1 + "," + n2V + " @@");
-    }
-    public static void h4(int l1V, int n1V, int l2V,
-                          int n2V, int l2V1,
-                          File f, File m) {
-        System.out.println("@@ -" + l1V + ", "
-                + n1V + " +" + l2V1 + "," + n2V + " @@");
-        linePrinter(l1V, n1V, l2V, n2V, f, m);
-    }
-    public static void h5(int l1V, int l1V1,
-                          int n1V, int l2V1,
-                          int n2V,
-                          File f, File m, int l2V) {
-        System.out.println("@@ -" + l1V1 + ","
-                + n1V
-                + " +" + l2V1 + "," + n2V + " @@");
-        linePrinter(l1V, n1V, l2V, n2V, f, m);
-    }
-    public static void h6(int l1V1, int l2V1, int n2V,
-                          int l1V, int n1V, int l2V,
-                          File f, File m) {
-        System.out.println("@@ -" + l1V1
-                + " +" + l2V1 + "," + n2V + " @@");
-        linePrinter(l1V, n1V, l2V, n2V, f, m);
     }
 
+    /** Returns the lines of working file F, or an empty list if it
+     *  cannot be read. */
+    public static List<String> lines(File f) {
+        try {
+            return Files.readAllLines(f.toPath());
+        } catch (IOException excp) {
+            return Collections.emptyList();
+        }
+    }
 
-    public static void diffWorker(Commit c) {
-        for (Entry<String, String> e : c.getCM().entrySet()) {
-            File f = Utils.join(BLOBS, e.getValue() + ".txt");
-            File m = Utils.join(CWD, e.getKey());
-            ArrayList<Integer> l1 = l1(f, m); ArrayList<Integer> n1 = n1(f, m);
-            ArrayList<Integer> l2 = l2(f, m); ArrayList<Integer> n2 = n2(f, m);
-            if (m.exists()) {
-                String y = Utils.sha1(Utils.readContentsAsString(m));
-                if (e.getValue().equals(y)) {
-                    continue;
+    /** Moves all loose commits and blobs into the pack.  Each blob that
+     *  replaced an earlier version of the same file in some commit is
+     *  stored as a delta against that version when that is smaller. */
+    public static void gc() {
+        TreeMap<String, String> bases = new TreeMap<String, String>();
+        List<String> looseCommits = new ArrayList<String>();
+        for (String name : Utils.plainFilenamesIn(COMMITS)) {
+            if (Utils.isId(name)) {
+                looseCommits.add(name);
+            }
+        }
+        for (String id : Commit.ids()) {
+            Commit c = Commit.load(id);
+            if (c.getParentId() == null) {
+                continue;
+            }
+            TreeMap<String, String> parent = c.getParent().getCM();
+            for (Entry<String, String> e : c.getCM().entrySet()) {
+                String old = parent.get(e.getKey());
+                if (old != null && !old.equals(e.getValue())) {
+                    bases.putIfAbsent(e.getValue(), old);
                 }
             }
-            if (m.exists()) {
-                diffWorker1(e.getKey(), m.getName());
-                for (int i = 0; i < l1.size(); i++) {
-                    int l1V = l1.get(i); int l1V1 = l1.get(i) + 1;
-                    int l2V1 = l2.get(i) + 1; int n1V = n1.get(i);
-                    int n2V = n2.get(i); int l2V = l2.get(i);
-                    if (n1.get(i) == 0 && n2V == 0) {
-                        h3(l1V, n1V, l2V1, n2V);
-                    } else if (n1.get(i) == 0) {
-                        if (n2V == 1) {
-                            h1(l1V, n1V, l2.get(i), l2V1, n2V, f, m);
-                        } else {
-                            h4(l1V, n1V, l2V, n2V, l2V1, f, m);
-                        }
-                    } else if (n2V == 0) {
-                        if (n1.get(i) == 1) {
-                            h2(l1V, l1V1, l2.get(i), n1.get(i), n2V, f, m);
-                        } else {
-                            h5(l1V, l1V1, n1V, l2V1, n2V, f, m, l2V);
-                        }
-                    } else if (n1.get(i) == 1 && n2V == 1) {
-                        System.out.println("@@ -" + l1V1 + " +" + l2V1 + " @@");
-                        linePrinter(l1V, n1.get(i), l2.get(i), n2V, f, m);
-                    } else if (n1.get(i) == 1) {
-                        if (n2V == 0) {
-                            h2(l1V, l1V1, l2.get(i), n1.get(i), n2V, f, m);
-                        } else {
-                            h6(l1V1, l2V1, n2V, l1V, n1V, l2V, f, m);
-                        }
-                    } else if (n2V == 1) {
-                        if (n1.get(i) == 0) {
-                            h1(l1V, n1V, l2.get(i), l2V1, n2V, f, m);
-                        } else {
-                            System.out.println("@@ -" + l1V1 + ","
-                                    + n1.get(i) + " " + "+" + l2V1 + " @@");
-                            linePrinter(l1V, n1.get(i), l2.get(i), n2V, f, m);
-                        }
-                    } else {
-                        System.out.println("@@ -" + l1V1 + "," + n1V
-                                + " +" + l2V1 + "," + n2V + " @@");
-                        linePrinter(l1V, n1.get(i), l2.get(i), n2V, f, m);
-                    }
+        }
+        for (String id : looseCommits) {
+            PACK.append(id, PackFile.COMMIT, null,
+                    Utils.readContents(Utils.join(COMMITS, id)));
+        }
+        TreeMap<String, Integer> depths = new TreeMap<String, Integer>();
+        ArrayList<File> packed = new ArrayList<File>();
+        for (File dir : BLOBS.listFiles(File::isDirectory)) {
+            for (File f : dir.listFiles()) {
+                String id = dir.getName() + f.getName();
+                if (Utils.isId(id)) {
+                    packBlob(id, bases, depths);
+                    packed.add(f);
                 }
-            } else {
-                diffErrorPrinter(e.getKey());
             }
         }
+        PACK.finish();
+        for (String id : looseCommits) {
+            Utils.join(COMMITS, id).delete();
+        }
+        for (File f : packed) {
+            f.delete();
+            f.getParentFile().delete();
+        }
     }
-    public static void diffErrorPrinter(String s) {
-        System.out.println("diff --git a/" + s + " /dev/null");
-        System.out.println("--- a/" + s);
-        System.out.println("+++ /dev/null");
-        System.out.println("@@ -1 +0,0 @@");
-        System.out.println("-This is not a wug.");
+
+    /** Appends loose blob ID to the pack unless it is already there,
+     *  first packing the blob BASES names as its base.  DEPTHS records
+     *  the delta depth of each blob packed so far; ids in progress are
+     *  marked with -1 so that cycles of bases are broken. */
+    private static void packBlob(String id, TreeMap<String, String> bases,
+                                 TreeMap<String, Integer> depths) {
+        if (depths.containsKey(id) || PACK.contains(id)) {
+            return;
+        }
+        depths.put(id, -1);
+        String base = bases.get(id);
+        int baseDepth = -1;
+        if (base != null && STORE.contains(base)) {
+            packBlob(base, bases, depths);
+            baseDepth = depths.containsKey(base) ? depths.get(base)
+                    : PACK.depth(base);
+        }
+        byte[] contents = STORE.read(id);
+        if (baseDepth >= 0 && baseDepth < MAX_DELTA_DEPTH) {
+            byte[] delta = Delta.create(STORE.read(base), contents);
+            if (delta != null) {
+                PACK.append(id, PackFile.DELTA, base, delta);
+                depths.put(id, baseDepth + 1);
+                return;
+            }
+        }
+        PACK.append(id, PackFile.BLOB, null, contents);
+        depths.put(id, 0);
     }
-    public static void diffErrorPrinter1(String s) {
-        System.out.println("diff --git a/" + s + " /dev/null");
-        System.out.println("--- a/" + s);
-        System.out.println("+++ /dev/null");
-        System.out.println("@@ -1 +0,0 @@");
-        System.out.println("-This is not a wug.");
+
+    /** Print on OUT the diff of file NAME, whose lines were LINES,
+     *  against its absence. */
+    public static void printDeleted(String name, List<String> lines,
+                                    PrintWriter out) {
+        out.println("diff --git a/" + name + " /dev/null");
+        out.println("--- a/" + name);
+        out.println("+++ /dev/null");
+        if (!lines.isEmpty()) {
+            out.println("@@ -1" + (lines.size() == 1 ? ""
+                    : "," + lines.size()) + " +0,0 @@");
+        }
+        for (String line : lines) {
+            out.println("-" + line);
+        }
     }
-    public static void diffErrorPrinter2() {
-        System.out.println("diff --git /dev/null b/i.txt");
-        System.out.println("--- /dev/null");
-        System.out.println("+++ b/i.txt");
-        System.out.println("@@ -0,0 +1 @@");
-        System.out.println("+This is a wug.");
+
+    /** Print on OUT the diff of the absence of file NAME against its
+     *  lines LINES. */
+    public static void printAdded(String name, List<String> lines,
+                                  PrintWriter out) {
+        out.println("diff --git /dev/null b/" + name);
+        out.println("--- /dev/null");
+        out.println("+++ b/" + name);
+        if (!lines.isEmpty()) {
+            out.println("@@ -0,0 +1" + (lines.size() == 1 ? ""
+                    : "," + lines.size()) + " @@");
+        }
+        for (String line : lines) {
+            out.println("+" + line);
+        }
     }
+
     public static Branch rB(String a) {
-        Branch b = Utils.readObject(Utils.join(BRANCHES,
-                a), Branch.class);
-        return b;
-    }
-    public static void chubbyDiff(ArrayList<Integer> l1,
-                                  ArrayList<Integer> n1,
-                                  ArrayList<Integer> l2,
-                                  ArrayList<Integer> n2,
-                                  File f, File m) {
-        for (int i = 0; i < l1.size(); i++) {
-            int l1V = l1.get(i); int l1V1 = l1.get(i) + 1;
-            int l2V1 = l2.get(i) + 1; int n1V = n1.get(i);
-            int n2V = n2.get(i); int l2V = l2.get(i);
-            if (n1.get(i) == 0 && n2V == 0) {
-                System.out.println("@@ -" + l1V + "," + n1V
-                        + " +" + l2V1 + "," + n2V + " @@");
-            } else if (n1.get(i) == 0) {
-                if (n2.get(i) == 1) {
-                    h1(l1V, n1V, l2V, l2V1, n2V, f, m);
-                } else {
-                    System.out.println("@@ -" + l1V + ", "
-                            + n1V + " +" + l2V1
-                            + "," + n2V + " @@");
-                    linePrinter(l1V, n1V, l2V, n2V, f, m);
-                }
-            } else if (n2.get(i) == 0) {
-                if (n1.get(i) == 1) {
-                    h2(l1V, l1V1, l2V, n1V, n2V, f, m);
-                } else {
-                    System.out.println("@@ -" + l1V1 + "," + n1V
-                            + " +" + l2V1 + "," + n2V + " @@");
-                    linePrinter(l1V, n1V, l2V, n2V, f, m);
-                }
-            } else if (n1.get(i) == 1 && n2.get(i) == 1) {
-                System.out.println("@@ -" + l1V1
-                        + " +" + l2V1 + " @@");
-                linePrinter(l1V, n1V, l2V, n2V, f, m);
-            } else if (n1V == 1) {
-                if (n2.get(i) == 0) {
-                    h2(l1V, l1V1, l2V, n1V, n2V, f, m);
-                } else {
-                    System.out.println("@@ -" + l1V1 + " +"
-                            + l2V1 + "," + n2V + " @@");
-                    linePrinter(l1V, n1V, l2V, n2V, f, m);
-                }
-            } else if (n2.get(i) == 1) {
-                if (n1.get(i) == 0) {
-                    h1(l1V, n1V, l2V, l2V1, n2V, f, m);
-                } else {
-                    System.out.println("@@ -" + l1V1 + ","
-                            + n1V + " +" + l2V1 + " @@");
-                    linePrinter(l1V, n1V, l2V, n2V, f, m);
-                }
-            } else {
-                System.out.println("@@ -" + l1V1 + "," + n1V
-                        + " +" + l2V1 + "," + n2V + " @@");
-                linePrinter(l1V, n1V, l2V, n2V, f, m);
-            }
+        Branch b = Branch.load(a);
+        if (b == null) {
+            throw new GitletException("A branch with that name "
+                    + "does not exist.");
         }
+        return b;
     }
-
     public static void diff(String[] args) {
         if (args.length == 1) {
-            Commit dH = Utils.readObject(HEAD, Commit.class);
-            diffWorker(dH);
+            diffWorker(Branch.head());
         } else if (args.length == 2) {
             Branch b = rB(args[1]); Commit dB = b.getCommit();
             diffWorker(dB);
         } else if (args.length == 3) {
-            Branch b1 = rB(args[1]); Branch b2 = rB(args[2]);
-            Commit b1C = b1.getCommit(); Commit b2C = b2.getCommit();
-            for (Entry<String, String> e : b1C.getCM().entrySet()) {
-                for (Entry<String, String> r : b2C.getCM().entrySet()) {
-                    File f = Utils.join(BLOBS, e.getValue() + ".txt");
-                    File m = Utils.join(BLOBS, r.getValue() + ".txt");
-                    ArrayList<Integer> l1 = l1(f, m);
-                    ArrayList<Integer> n1 = n1(f, m);
-                    ArrayList<Integer> l2 = l2(f, m);
-                    ArrayList<Integer> n2 = n2(f, m);
-                    if (m.exists()) {
-                        String y = Utils.sha1(Utils.readContentsAsString(m));
-                        if (e.getValue().equals(y)) {
-                            continue;
-                        }
-                    }
-                    if (!e.getKey().equals(r.getKey())) {
-                        continue;
-                    }
-                    if (m.exists()) {
-                        diffWorker1(e.getKey(), r.getKey());
-                        chubbyDiff(l1, n1, l2, n2, f, m);
+            Commit b1C = rB(args[1]).getCommit();
+            Commit b2C = rB(args[2]).getCommit();
+            TreeMap<String, String[]> delta = new TreeMap<String, String[]>();
+            Tree.changes(b1C.getTree(), b2C.getTree(), "", delta);
+            ArrayList<Consumer<PrintWriter>> jobs = new ArrayList<>();
+            for (Entry<String, String[]> e : delta.entrySet()) {
+                String name = e.getKey(), from = e.getValue()[0],
+                        to = e.getValue()[1];
+                jobs.add(out -> {
+                    if (to == null) {
+                        printDeleted(name, STORE.readLines(from), out);
+                    } else if (from == null) {
+                        printAdded(name, STORE.readLines(to), out);
+                    } else {
+                        diffWorker1(name, name, out);
+                        printHunks(new FileDiff(STORE.readLines(from),
+                                                STORE.readLines(to)), out);
                     }
-                }
+                });
             }
-            diffErrorPrinter1("h.txt");
-            diffErrorPrinter2();
+            printInOrder(jobs);
         }
     }
 }
@@ -0,0 +1,308 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/** An inverted index from commit messages, and from the words in them,
+ *  to the ids of the commits carrying them.  Each entry is a key and a
+ *  binary commit id; a message is keyed as '=' followed by the whole
+ *  message, and each distinct word in it as '~' followed by the word in
+ *  lower case.
+ *
+ *  The entries live in a sorted file, which is memory-mapped and
+ *  binary-searched, and in a short journal of entries added since the
+ *  sorted file was last written.  Once the journal grows past
+ *  JOURNAL_LIMIT bytes, it is merged into the sorted file.
+ *  @author athmiha bhaskaran
+ */
+class MessageIndex {
+
+    /** Length in bytes of a binary commit id. */
+    private static final int ID_SIZE = ObjectIndex.ID_SIZE;
+
+    /** Size in bytes past which the journal is merged. */
+    private static final long JOURNAL_LIMIT = 1 << 16;
+
+    /** Key marker for whole messages. */
+    private static final char MESSAGE = '=';
+
+    /** Key marker for words. */
+    private static final char WORD = '~';
+
+    /** An index kept in the sorted file SORTED and the journal JOURNAL. */
+    MessageIndex(File sorted, File journal) {
+        _sorted = sorted;
+        _journal = journal;
+    }
+
+    /** Returns true iff neither file of the index exists. */
+    boolean missing() {
+        return !_sorted.isFile() && !_journal.isFile();
+    }
+
+    /** Record that commit ID has message MESSAGE.  An entry cut short at
+     *  the end of the journal, by a run that stopped while appending it,
+     *  is cut off first, so that the new entries start where it did. */
+    void add(String id, String message) {
+        byte[] bid = Utils.fromHex(id);
+        ByteArrayOutputStream added = new ByteArrayOutputStream();
+        for (String key : keys(message)) {
+            added.writeBytes(entry(key.getBytes(StandardCharsets.UTF_8),
+                                   bid));
+        }
+        long whole = 0;
+        for (byte[] e : journalEntries()) {
+            whole += e.length;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(added.toByteArray());
+        _journal.getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(_journal.toPath(),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE)) {
+            out.truncate(whole);
+            out.position(whole);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.appended(_journal);
+        if (_journal.length() > JOURNAL_LIMIT) {
+            List<byte[]> entries = sortedEntries();
+            entries.addAll(journalEntries());
+            write(entries);
+        }
+    }
+
+    /** Replace the contents of the index with the messages of the commits
+     *  with ids IDS. */
+    void rebuild(Iterable<String> ids) {
+        List<byte[]> entries = new ArrayList<>();
+        for (String id : ids) {
+            byte[] bid = Utils.fromHex(id);
+            for (String key : keys(Commit.load(id).getMessage())) {
+                entries.add(entry(key.getBytes(StandardCharsets.UTF_8),
+                                  bid));
+            }
+        }
+        write(entries);
+    }
+
+    /** Returns the ids of the commits whose message is MESSAGE. */
+    TreeSet<String> exact(String message) {
+        return search(MESSAGE + message, false);
+    }
+
+    /** Returns the ids of the commits whose message starts with PREFIX. */
+    TreeSet<String> prefix(String prefix) {
+        return search(MESSAGE + prefix, true);
+    }
+
+    /** Returns the ids of the commits whose message contains the word
+     *  WORD, ignoring case. */
+    TreeSet<String> word(String word) {
+        return search(WORD + word.toLowerCase(Locale.ROOT), false);
+    }
+
+    /** Forget the mapped sorted file, so that the next use maps it
+     *  again. */
+    void reload() {
+        _map = null;
+    }
+
+    /** Returns the keys under which a commit with MESSAGE is indexed. */
+    private static TreeSet<String> keys(String message) {
+        TreeSet<String> result = new TreeSet<>();
+        result.add(MESSAGE + message);
+        for (String w : message.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                result.add(WORD + w);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of the entries whose key is KEY or, if PREFIX,
+     *  starts with KEY. */
+    private TreeSet<String> search(String key, boolean prefix) {
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        TreeSet<String> result = new TreeSet<>();
+        ByteBuffer map = map();
+        int n = map.capacity() == 0 ? 0 : map.getInt(0);
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Arrays.compareUnsigned(key(map, mid), target) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < n && matches(key(map, k), target, prefix);
+             k += 1) {
+            result.add(id(map, k));
+        }
+        for (byte[] e : journalEntries()) {
+            if (matches(entryKey(e), target, prefix)) {
+                result.add(Utils.toHex(Arrays.copyOfRange(e, e.length
+                                                          - ID_SIZE,
+                                                          e.length)));
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff KEY is TARGET or, if PREFIX, starts with it. */
+    private static boolean matches(byte[] key, byte[] target,
+                                   boolean prefix) {
+        if (prefix) {
+            return key.length >= target.length
+                && Arrays.equals(key, 0, target.length,
+                                 target, 0, target.length);
+        }
+        return Arrays.equals(key, target);
+    }
+
+    /** Returns the key of entry K of the sorted file mapped in MAP. */
+    private static byte[] key(ByteBuffer map, int k) {
+        int pos = map.getInt(4 + 4 * k);
+        byte[] result = new byte[map.getInt(pos)];
+        map.get(pos + 4, result);
+        return result;
+    }
+
+    /** Returns the id of entry K of the sorted file mapped in MAP. */
+    private static String id(ByteBuffer map, int k) {
+        int pos = map.getInt(4 + 4 * k);
+        byte[] result = new byte[ID_SIZE];
+        map.get(pos + 4 + map.getInt(pos), result);
+        return Utils.toHex(result);
+    }
+
+    /** Returns the key of the encoded entry ENTRY. */
+    private static byte[] entryKey(byte[] entry) {
+        return Arrays.copyOfRange(entry, 4, entry.length - ID_SIZE);
+    }
+
+    /** Returns the entry for KEY and binary id ID, encoded as the length
+     *  of KEY, KEY, then ID. */
+    private static byte[] entry(byte[] key, byte[] id) {
+        ByteBuffer result = ByteBuffer.allocate(4 + key.length + ID_SIZE);
+        result.putInt(key.length).put(key).put(id);
+        return result.array();
+    }
+
+    /** Compare entries A and B by key, then by id, as unsigned bytes. */
+    private static int compare(byte[] a, byte[] b) {
+        int c = Arrays.compareUnsigned(a, 4, a.length - ID_SIZE,
+                                       b, 4, b.length - ID_SIZE);
+        if (c != 0) {
+            return c;
+        }
+        return Arrays.compareUnsigned(a, a.length - ID_SIZE, a.length,
+                                      b, b.length - ID_SIZE, b.length);
+    }
+
+    /** Returns the entries of the sorted file. */
+    private List<byte[]> sortedEntries() {
+        ByteBuffer map = map();
+        int n = map.capacity() == 0 ? 0 : map.getInt(0);
+        List<byte[]> result = new ArrayList<>(n);
+        for (int k = 0; k < n; k += 1) {
+            result.add(entry(key(map, k), Utils.fromHex(id(map, k))));
+        }
+        return result;
+    }
+
+    /** Returns the entries of the journal, less any entry cut short by a
+     *  run that stopped while appending it. */
+    private List<byte[]> journalEntries() {
+        List<byte[]> result = new ArrayList<>();
+        if (!_journal.isFile()) {
+            return result;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(_journal));
+        while (buf.remaining() >= 4) {
+            long length = 4L + buf.getInt(buf.position()) + ID_SIZE;
+            if (length < 4 + ID_SIZE || length > buf.remaining()) {
+                break;
+            }
+            byte[] e = new byte[(int) length];
+            buf.get(e);
+            result.add(e);
+        }
+        return result;
+    }
+
+    /** Replace the sorted file with ENTRIES and empty the journal.  The
+     *  sorted file is a count, a table of the offsets of the entries in
+     *  order of key and id, and the entries themselves. */
+    private void write(List<byte[]> entries) {
+        entries.sort(MessageIndex::compare);
+        int n = entries.size();
+        ByteBuffer header = ByteBuffer.allocate(4 + 4 * n);
+        header.putInt(n);
+        int pos = header.capacity();
+        for (byte[] e : entries) {
+            header.putInt(pos);
+            pos += e.length;
+        }
+        _sorted.getParentFile().mkdirs();
+        File tmp = Utils.tempFor(_sorted);
+        try (BufferedOutputStream out = new BufferedOutputStream(
+                 Files.newOutputStream(tmp.toPath()))) {
+            out.write(header.array());
+            for (byte[] e : entries) {
+                out.write(e);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.rename(tmp, _sorted);
+        _journal.delete();
+        _map = null;
+    }
+
+    /** Returns the mapped contents of the sorted file, mapping it on
+     *  first use.  A missing file has no entries. */
+    private ByteBuffer map() {
+        if (_map == null) {
+            if (!_sorted.isFile()) {
+                return EMPTY;
+            }
+            try (FileChannel ch = FileChannel.open(_sorted.toPath(),
+                                                   StandardOpenOption.READ)) {
+                _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _map;
+    }
+
+    /** The sorted file. */
+    private final File _sorted;
+
+    /** The journal of entries not yet in _sorted. */
+    private final File _journal;
+
+    /** Mapped contents of _sorted, or null if not yet mapped. */
+    private ByteBuffer _map;
+
+    /** Contents of a sorted file that does not exist. */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+}
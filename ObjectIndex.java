@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A sorted file of fixed-width records, each a 20-byte object id
+ *  followed by a value of a fixed size.  The file is memory-mapped and
+ *  searched in place, so looking up an id or an abbreviation of one
+ *  takes O(log n) time and reads only the pages it touches.
+ *
+ *  Records added one at a time are appended, unsorted, to a journal
+ *  beside the file, which is read whole and searched in memory.  Once the
+ *  journal grows past JOURNAL_LIMIT bytes, it is merged into the sorted
+ *  file.
+ *  @author athmiha bhaskaran
+ */
+class ObjectIndex {
+
+    /** Length in bytes of a binary object id. */
+    static final int ID_SIZE = Utils.UID_LENGTH / 2;
+
+    /** Size in bytes past which the journal is merged. */
+    private static final long JOURNAL_LIMIT = 1 << 16;
+
+    /** An index kept in FILE whose values are VALUESIZE bytes long. */
+    ObjectIndex(File file, int valueSize) {
+        _file = file;
+        _journal = new File(file.getPath() + ".log");
+        _recordSize = ID_SIZE + valueSize;
+    }
+
+    /** Returns the number of records in the sorted file. */
+    private int size() {
+        return map().capacity() / _recordSize;
+    }
+
+    /** Returns true iff ID has a record. */
+    boolean contains(String id) {
+        return tail().containsKey(id) || find(id) >= 0;
+    }
+
+    /** Returns the value recorded for ID, or null if there is none. */
+    ByteBuffer value(String id) {
+        byte[] added = tail().get(id);
+        if (added != null) {
+            return ByteBuffer.wrap(added);
+        }
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        return map().slice(k * _recordSize + ID_SIZE,
+                           _recordSize - ID_SIZE);
+    }
+
+    /** Returns the id of record K of the sorted file. */
+    private String id(int k) {
+        byte[] id = new byte[ID_SIZE];
+        map().get(k * _recordSize, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns all ids, in order. */
+    List<String> ids() {
+        return new ArrayList<>(records().keySet());
+    }
+
+    /** Returns the only id that starts with PREFIX, or null if there is
+     *  none.  Throws a GitletException if more than one id does. */
+    String resolve(String prefix) {
+        if (prefix.length() > Utils.UID_LENGTH
+            || !prefix.matches("[0-9a-f]*")) {
+            return null;
+        }
+        StringBuilder low = new StringBuilder(prefix);
+        while (low.length() < Utils.UID_LENGTH) {
+            low.append('0');
+        }
+        String found = null;
+        int k = lowerBound(Utils.fromHex(low.toString()));
+        if (k < size() && id(k).startsWith(prefix)) {
+            if (k + 1 < size() && id(k + 1).startsWith(prefix)) {
+                throw Utils.error("Commit id %s is ambiguous.", prefix);
+            }
+            found = id(k);
+        }
+        for (String id : tail().tailMap(prefix).keySet()) {
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            if (found != null && !found.equals(id)) {
+                throw Utils.error("Commit id %s is ambiguous.", prefix);
+            }
+            found = id;
+        }
+        return found;
+    }
+
+    /** Replace the contents of this index with RECORDS, a map from id to
+     *  value.  Throws IllegalArgumentException, leaving the index as it
+     *  was, if a key of RECORDS is not a full object id. */
+    void write(TreeMap<String, byte[]> records) {
+        _file.getParentFile().mkdirs();
+        File tmp = Utils.tempFor(_file);
+        try (OutputStream out = new BufferedOutputStream(
+                 Files.newOutputStream(tmp.toPath()))) {
+            for (Map.Entry<String, byte[]> e : records.entrySet()) {
+                if (!Utils.isId(e.getKey())) {
+                    throw new IllegalArgumentException("not an object id: "
+                                                       + e.getKey());
+                }
+                out.write(Utils.fromHex(e.getKey()));
+                out.write(e.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.rename(tmp, _file);
+        _journal.delete();
+        synchronized (this) {
+            _map = null;
+            _tail = null;
+        }
+    }
+
+    /** Returns all records as a map from id to value. */
+    TreeMap<String, byte[]> records() {
+        TreeMap<String, byte[]> result = new TreeMap<>();
+        for (int k = 0, n = size(); k < n; k += 1) {
+            byte[] value = new byte[_recordSize - ID_SIZE];
+            map().get(k * _recordSize + ID_SIZE, value);
+            result.put(id(k), value);
+        }
+        result.putAll(tail());
+        return result;
+    }
+
+    /** Record VALUE for ID, replacing any previous record for it.  The
+     *  record is appended to the journal, over any record left cut short
+     *  at its end, and the journal is merged once it is too long. */
+    void add(String id, byte[] value) {
+        if (!Utils.isId(id)) {
+            throw new IllegalArgumentException("not an object id: " + id);
+        }
+        ByteBuffer rec = ByteBuffer.allocate(_recordSize);
+        rec.put(Utils.fromHex(id)).put(value).flip();
+        long length;
+        _journal.getParentFile().mkdirs();
+        try (FileChannel out = FileChannel.open(_journal.toPath(),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE)) {
+            long whole = out.size() - out.size() % _recordSize;
+            out.truncate(whole);
+            out.position(whole);
+            while (rec.hasRemaining()) {
+                out.write(rec);
+            }
+            length = out.size();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.appended(_journal);
+        synchronized (this) {
+            tail().put(id, value);
+        }
+        if (length > JOURNAL_LIMIT) {
+            write(records());
+        }
+    }
+
+    /** Forget the mapped file and the journal, so that the next use reads
+     *  them again. */
+    synchronized void reload() {
+        _map = null;
+        _tail = null;
+    }
+
+    /** Returns the records of the journal, as a map from id to value,
+     *  reading it on first use.  A record cut short at its end is
+     *  ignored. */
+    private synchronized TreeMap<String, byte[]> tail() {
+        if (_tail == null) {
+            _tail = new TreeMap<>();
+            if (_journal.isFile()) {
+                ByteBuffer buf =
+                    ByteBuffer.wrap(Utils.readContents(_journal));
+                while (buf.remaining() >= _recordSize) {
+                    byte[] id = new byte[ID_SIZE];
+                    byte[] value = new byte[_recordSize - ID_SIZE];
+                    buf.get(id).get(value);
+                    _tail.put(Utils.toHex(id), value);
+                }
+            }
+        }
+        return _tail;
+    }
+
+    /** Returns the record number of ID, or -1 if it has none. */
+    private int find(String id) {
+        if (id.length() != Utils.UID_LENGTH || !id.matches("[0-9a-f]*")) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        int k = lowerBound(key);
+        return k < size() && compare(k, key) == 0 ? k : -1;
+    }
+
+    /** Returns the number of the first record whose id is not less than
+     *  KEY. */
+    private int lowerBound(byte[] key) {
+        int lo = 0, hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compare the id of record K with KEY as unsigned bytes. */
+    private int compare(int k, byte[] key) {
+        ByteBuffer map = map();
+        int base = k * _recordSize;
+        for (int i = 0; i < ID_SIZE; i += 1) {
+            int c = Byte.compareUnsigned(map.get(base + i), key[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the mapped contents of the index, mapping it on first
+     *  use.  A missing file is an empty index. */
+    private synchronized ByteBuffer map() {
+        if (_map == null) {
+            if (!_file.isFile()) {
+                return EMPTY;
+            }
+            try (FileChannel ch = FileChannel.open(_file.toPath(),
+                                                   StandardOpenOption.READ)) {
+                _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _map;
+    }
+
+    /** The file holding the sorted records. */
+    private final File _file;
+
+    /** The journal of records not yet in _file. */
+    private final File _journal;
+
+    /** Records of _journal, by id, or null if not yet read. */
+    private TreeMap<String, byte[]> _tail;
+
+    /** Length in bytes of one record. */
+    private final int _recordSize;
+
+    /** Mapped contents of _file, or null if not yet mapped. */
+    private ByteBuffer _map;
+
+    /** Contents of an index whose file does not exist. */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+}
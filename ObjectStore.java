@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** A content-addressed store of blobs.  Every object is named by the
+ *  SHA-1 of its uncompressed contents.
+ *  @author athmiha bhaskaran
+ */
+interface ObjectStore {
+
+    /** Returns true iff an object named ID is in this store. */
+    boolean contains(String id);
+
+    /** Returns a stream over the uncompressed contents of object ID.
+     *  Throws IllegalArgumentException if there is no such object. */
+    InputStream open(String id);
+
+    /** Adds the contents of IN to this store, reading it to the end, and
+     *  returns the id of the resulting object. */
+    String write(InputStream in);
+
+    /** Adds the contents of FILE to this store and returns its id. */
+    default String write(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return write(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Adds CONTENTS to this store and returns its id. */
+    default String write(byte[] contents) {
+        return write(new ByteArrayInputStream(contents));
+    }
+
+    /** Returns the uncompressed contents of object ID. */
+    default byte[] read(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of object ID as a String. */
+    default String readString(String id) {
+        return new String(read(id), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the lines of object ID, split as Files.readAllLines
+     *  would split them. */
+    default List<String> readLines(String id) {
+        try (BufferedReader in = new BufferedReader(
+                 new InputStreamReader(open(id), StandardCharsets.UTF_8))) {
+            return in.lines().collect(Collectors.toList());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of object ID to FILE, replacing it and
+     *  creating its directory if needed.  The bytes go straight from the
+     *  object's stream into the file's channel, unchanged. */
+    default void copyTo(String id, File file) {
+        file.getParentFile().mkdirs();
+        try (ReadableByteChannel in = Channels.newChannel(open(id));
+             FileChannel out = FileChannel.open(file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = 0;
+            for (long n; (n = out.transferFrom(in, pos, 1 << 20)) > 0;) {
+                pos += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
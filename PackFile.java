@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A single append-only file of objects plus a sorted index of them.
+ *  Each object in the pack is stored as a kind byte, the 20-byte id of
+ *  its base if it is a DELTA, and its deflated payload.  The index is an
+ *  ObjectIndex whose values are (kind, offset, length), so an object is
+ *  found by binary search over the mapped index and then fetched with a
+ *  single positioned read.
+ *  @author athmiha bhaskaran
+ */
+class PackFile {
+
+    /** Kind of a whole blob. */
+    static final int BLOB = 1;
+
+    /** Kind of a serialized commit. */
+    static final int COMMIT = 2;
+
+    /** Kind of a blob stored as a Delta against another blob. */
+    static final int DELTA = 3;
+
+    /** Length in bytes of a binary object id. */
+    static final int ID_SIZE = ObjectIndex.ID_SIZE;
+
+    /** Length in bytes of the value of an index record. */
+    static final int VALUE_SIZE = 4 + 8 + 4;
+
+    /** A pack whose objects are in PACK and whose index is INDEX. */
+    PackFile(File pack, File index) {
+        _pack = pack;
+        _index = new ObjectIndex(index, VALUE_SIZE);
+    }
+
+    /** Returns the index of this pack. */
+    ObjectIndex index() {
+        return _index;
+    }
+
+    /** Returns true iff object ID is in this pack. */
+    boolean contains(String id) {
+        return record(id) != null;
+    }
+
+    /** Returns the contents of object ID, applying deltas as needed. */
+    byte[] read(String id) {
+        ByteBuffer entry = entry(id);
+        int kind = entry.get();
+        if (kind == DELTA) {
+            byte[] base = new byte[ID_SIZE];
+            entry.get(base);
+            return Delta.apply(read(Utils.toHex(base)), inflate(entry));
+        }
+        return inflate(entry);
+    }
+
+    /** Returns the length of the chain of deltas behind object ID. */
+    int depth(String id) {
+        ByteBuffer entry = entry(id);
+        if (entry.get() != DELTA) {
+            return 0;
+        }
+        byte[] base = new byte[ID_SIZE];
+        entry.get(base);
+        return 1 + depth(Utils.toHex(base));
+    }
+
+    /** Append object ID of kind KIND with contents PAYLOAD to the pack.
+     *  For a DELTA, BASE is the id of the object PAYLOAD applies to.  The
+     *  index is not rewritten until finish() is called. */
+    void append(String id, int kind, String base, byte[] payload) {
+        try {
+            if (_out == null) {
+                _pack.getParentFile().mkdirs();
+                _out = FileChannel.open(_pack.toPath(),
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE,
+                                        StandardOpenOption.APPEND);
+            }
+            byte[] body = deflate(payload);
+            ByteBuffer entry = ByteBuffer.allocate(1 + (kind == DELTA
+                                                        ? ID_SIZE : 0)
+                                                   + body.length);
+            entry.put((byte) kind);
+            if (kind == DELTA) {
+                entry.put(Utils.fromHex(base));
+            }
+            entry.put(body).flip();
+            long offset = _out.size();
+            while (entry.hasRemaining()) {
+                _out.write(entry);
+            }
+            _added.put(id, new long[] {kind, offset, entry.limit()});
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Flush objects appended since the last call and replace the index
+     *  with one that also covers them. */
+    void finish() {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.force(true);
+            _out.close();
+            _out = null;
+            TreeMap<String, byte[]> all = _index.records();
+            for (Map.Entry<String, long[]> e : _added.entrySet()) {
+                ByteBuffer value = ByteBuffer.allocate(VALUE_SIZE);
+                value.putInt((int) e.getValue()[0]);
+                value.putLong(e.getValue()[1]);
+                value.putInt((int) e.getValue()[2]);
+                all.putIfAbsent(e.getKey(), value.array());
+            }
+            _index.write(all);
+            _added.clear();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the {kind, offset, length} record of object ID, or null. */
+    private long[] record(String id) {
+        if (_added.containsKey(id)) {
+            return _added.get(id);
+        }
+        ByteBuffer rec = _index.value(id);
+        if (rec == null) {
+            return null;
+        }
+        return new long[] {rec.getInt(), rec.getLong(), rec.getInt()};
+    }
+
+    /** Returns the whole pack entry for object ID, read with a single
+     *  positioned read. */
+    private ByteBuffer entry(String id) {
+        long[] rec = record(id);
+        if (rec == null) {
+            throw new IllegalArgumentException("no such object: " + id);
+        }
+        try {
+            FileChannel in = input();
+            ByteBuffer entry = ByteBuffer.allocate((int) rec[2]);
+            while (entry.hasRemaining()) {
+                if (in.read(entry, rec[1] + entry.position()) < 0) {
+                    throw new IOException("truncated pack");
+                }
+            }
+            return entry.flip();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the channel for reading the pack, opening it on first use.
+     *  Positioned reads on it may be made from several threads. */
+    private synchronized FileChannel input() throws IOException {
+        if (_in == null) {
+            _in = FileChannel.open(_pack.toPath(), StandardOpenOption.READ);
+        }
+        return _in;
+    }
+
+    /** Returns the deflated form of DATA. */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1 << 13];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Returns the inflated form of the remaining bytes of DATA. */
+    private static byte[] inflate(ByteBuffer data) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1 << 13];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && !inflater.finished()
+                    && inflater.needsInput()) {
+                    throw new IllegalArgumentException("truncated object");
+                }
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /** The file holding the objects. */
+    private final File _pack;
+
+    /** The sorted index of the objects. */
+    private final ObjectIndex _index;
+
+    /** Channel for reading _pack, opened on first use. */
+    private FileChannel _in;
+
+    /** Channel appending to _pack, or null when not appending. */
+    private FileChannel _out;
+
+    /** Records of objects appended since the last finish(), by id. */
+    private final TreeMap<String, long[]> _added = new TreeMap<>();
+}
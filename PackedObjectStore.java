@@ -0,0 +1,43 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/** An ObjectStore that looks objects up first among loose objects and
+ *  then in a PackFile.  New objects are always written loose; the gc
+ *  command later moves them into the pack.
+ *  @author athmiha bhaskaran
+ */
+class PackedObjectStore implements ObjectStore {
+
+    /** A store over the loose objects in LOOSE and the objects in
+     *  PACK. */
+    PackedObjectStore(LooseObjectStore loose, PackFile pack) {
+        _loose = loose;
+        _pack = pack;
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return _loose.contains(id) || _pack.contains(id);
+    }
+
+    @Override
+    public InputStream open(String id) {
+        if (_loose.contains(id)) {
+            return _loose.open(id);
+        }
+        return new ByteArrayInputStream(_pack.read(id));
+    }
+
+    @Override
+    public String write(InputStream in) {
+        return _loose.write(in);
+    }
+
+    /** Where new objects go. */
+    private final LooseObjectStore _loose;
+
+    /** Where packed objects are. */
+    private final PackFile _pack;
+}
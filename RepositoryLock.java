@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/** An advisory lock on a repository, held on a lock file for the length
+ *  of a command.  Commands that only read take it shared, so any number
+ *  of them run at once; commands that change the repository take it
+ *  exclusive, so they wait for each other and for every reader.  A
+ *  command that cannot get the lock within the timeout gives up.
+ *  @author athmiha bhaskaran
+ */
+class RepositoryLock {
+
+    /** Milliseconds between attempts to take the lock. */
+    private static final long POLL_MILLIS = 20;
+
+    /** A lock taken on FILE, waiting at most TIMEOUT milliseconds. */
+    RepositoryLock(File file, long timeout) {
+        _file = file;
+        _timeout = timeout;
+    }
+
+    /** Take the lock, shared if SHARED and otherwise exclusive.  Does
+     *  nothing if there is no repository to lock. */
+    void acquire(boolean shared) {
+        if (!_file.getParentFile().isDirectory()) {
+            return;
+        }
+        long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(_timeout);
+        try {
+            _channel = FileChannel.open(_file.toPath(),
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+            while (_channel.tryLock(0, Long.MAX_VALUE, shared) == null) {
+                if (System.nanoTime() >= deadline) {
+                    release();
+                    throw new GitletException("Another gitlet command is "
+                                              + "using this repository.");
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        } catch (IOException | InterruptedException excp) {
+            release();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Release the lock, if it is held. */
+    void release() {
+        if (_channel == null) {
+            return;
+        }
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            _channel = null;
+        }
+    }
+
+    /** The lock file. */
+    private final File _file;
+
+    /** Milliseconds to wait for the lock. */
+    private final long _timeout;
+
+    /** Channel on _file holding the lock, or null if it is not held. */
+    private FileChannel _channel;
+}
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** One directory of a commit's snapshot.  A tree maps each name in the
+ *  directory either to the id of a blob or to the id of another tree.
+ *  Trees are kept in the object store under the SHA-1 of their text
+ *  encoding, so a directory that did not change between two commits is
+ *  the same object in both, and two snapshots can be compared by
+ *  descending only into subtrees whose ids differ.
+ *  @author athmiha bhaskaran
+ */
+class Tree {
+
+    /** Tag of a blob entry in the text encoding. */
+    private static final String BLOB = "blob";
+
+    /** Tag of a subtree entry in the text encoding. */
+    private static final String TREE = "tree";
+
+    /** The id of the empty tree. */
+    static final String EMPTY = Utils.sha1(new byte[0]);
+
+    /** An empty tree. */
+    Tree() {
+    }
+
+    /** Returns the tree stored under ID, or an empty tree if ID is
+     *  null. */
+    static Tree read(String id) {
+        Tree result = new Tree();
+        if (id == null) {
+            return result;
+        }
+        for (String line : Main.STORE.readString(id).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split(" ", 3);
+            if (parts[0].equals(TREE)) {
+                result._trees.put(parts[2], parts[1]);
+            } else {
+                result._blobs.put(parts[2], parts[1]);
+            }
+        }
+        return result;
+    }
+
+    /** Stores this tree if it is not stored already and returns its
+     *  id. */
+    String write() {
+        StringBuilder text = new StringBuilder();
+        TreeMap<String, String> all = new TreeMap<>(_blobs);
+        all.putAll(_trees);
+        for (Map.Entry<String, String> e : all.entrySet()) {
+            text.append(_trees.containsKey(e.getKey()) ? TREE : BLOB)
+                .append(' ').append(e.getValue()).append(' ')
+                .append(e.getKey()).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(bytes);
+        if (!Main.STORE.contains(id)) {
+            Main.STORE.write(bytes);
+        }
+        return id;
+    }
+
+    /** Returns the id of the tree that results from applying CHANGES to
+     *  tree BASE (null for an empty tree).  CHANGES maps slash-separated
+     *  paths to their new blob ids, or to null for paths to remove.
+     *  Subtrees containing no changed path are reused without being
+     *  read. */
+    static String update(String base, Map<String, String> changes) {
+        Tree tree = read(base);
+        TreeMap<String, TreeMap<String, String>> subdirs = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (e.getValue() == null) {
+                    tree._blobs.remove(path);
+                } else {
+                    tree._blobs.put(path, e.getValue());
+                    tree._trees.remove(path);
+                }
+            } else {
+                subdirs.computeIfAbsent(path.substring(0, slash),
+                                        k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> e
+                 : subdirs.entrySet()) {
+            String sub = update(tree._trees.get(e.getKey()), e.getValue());
+            if (sub.equals(EMPTY)) {
+                tree._trees.remove(e.getKey());
+            } else {
+                tree._trees.put(e.getKey(), sub);
+                tree._blobs.remove(e.getKey());
+            }
+        }
+        return tree.write();
+    }
+
+    /** Adds every file under tree ID to INTO, mapping its path, prefixed
+     *  by PREFIX, to its blob id. */
+    static void flatten(String id, String prefix,
+                        TreeMap<String, String> into) {
+        Tree tree = read(id);
+        for (Map.Entry<String, String> e : tree._blobs.entrySet()) {
+            into.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : tree._trees.entrySet()) {
+            flatten(e.getValue(), prefix + e.getKey() + "/", into);
+        }
+    }
+
+    /** Adds to OUT every file path, prefixed by PREFIX, whose blob
+     *  differs between trees FROM and TO (either may be null), mapped to
+     *  {old blob id, new blob id}; a missing side is null.  Subtrees with
+     *  equal ids are skipped without being read. */
+    static void changes(String from, String to, String prefix,
+                        TreeMap<String, String[]> out) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = read(from), b = read(to);
+        TreeMap<String, String> names = new TreeMap<>(a._blobs);
+        names.putAll(b._blobs);
+        for (String name : names.keySet()) {
+            String x = a._blobs.get(name), y = b._blobs.get(name);
+            if (x == null || !x.equals(y)) {
+                out.put(prefix + name, new String[] {x, y});
+            }
+        }
+        names = new TreeMap<>(a._trees);
+        names.putAll(b._trees);
+        for (String name : names.keySet()) {
+            changes(a._trees.get(name), b._trees.get(name),
+                    prefix + name + "/", out);
+        }
+    }
+
+    /** Files in this directory, mapped to their blob ids. */
+    private final TreeMap<String, String> _blobs = new TreeMap<>();
+
+    /** Subdirectories of this directory, mapped to their tree ids. */
+    private final TreeMap<String, String> _trees = new TreeMap<>();
+}
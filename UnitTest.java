@@ -4,6 +4,11 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +25,145 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Returns the edits that convert X to Y. */
+    private static int[] diffs(List<String> x, List<String> y) {
+        Diff diff = new Diff();
+        diff.setSequences(x, y);
+        return diff.diffs();
+    }
+
+    /** Returns the result of applying EDITS, from X to Y, to X. */
+    private static List<String> apply(List<String> x, List<String> y,
+                                      int[] edits) {
+        ArrayList<String> result = new ArrayList<>();
+        int e1 = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            result.addAll(x.subList(e1, edits[k]));
+            result.addAll(y.subList(edits[k + 2],
+                                    edits[k + 2] + edits[k + 3]));
+            e1 = edits[k] + edits[k + 1];
+        }
+        result.addAll(x.subList(e1, x.size()));
+        return result;
+    }
+
+    /** Returns N lines drawn at random by RANDOM from a few repeated
+     *  lines and many distinct ones. */
+    private static List<String> lines(Random random, int n) {
+        String[] common = { "}", "}", "{", "", "return x;" };
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            if (random.nextInt(3) == 0) {
+                result.add(common[random.nextInt(common.length)]);
+            } else {
+                result.add("line" + random.nextInt(1000));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void diffLongestCommonTest() {
+        Diff diff = new Diff();
+        diff.setSequences(List.of("A", "B", "C", "A", "B", "B", "A"),
+                          List.of("C", "B", "A", "B", "A", "C"));
+        assertEquals(4, diff.lls());
+        assertArrayEquals(new int[] {1, 1, 1, 3, 2, 2, 6, 4, 1},
+                          diff.commonSubsequence());
+        assertArrayEquals(new int[] {0, 1, 0, 1, 2, 1, 2, 0,
+                                     5, 1, 4, 0, 7, 0, 5, 1},
+                          diff.diffs());
+    }
+
+    @Test
+    public void diffRepeatedLinesTest() {
+        assertArrayEquals(new int[] {2, 0, 2, 1},
+                          diffs(List.of("a", "b", "c"),
+                                List.of("a", "b", "b", "c")));
+        assertArrayEquals(new int[] {2, 1, 2, 0},
+                          diffs(List.of("a", "}", "}", "b"),
+                                List.of("a", "}", "b")));
+        assertArrayEquals(new int[] {4, 0, 4, 1},
+                          diffs(List.of("{", "}", "}", "}"),
+                                List.of("{", "}", "}", "}", "}")));
+    }
+
+    @Test
+    public void diffSlideMergesTest() {
+        assertArrayEquals(new int[] {0, 1, 0, 0, 3, 1, 2, 1},
+                          diffs(List.of("{", "line5", "{", "{"),
+                                List.of("line5", "{", "}")));
+        assertArrayEquals(new int[] {1, 1, 1, 1, 4, 1, 4, 1},
+                          diffs(List.of("line6", "", "line0", "", "}"),
+                                List.of("line6", "chg3", "line0", "", "")));
+        assertArrayEquals(new int[] {2, 1, 2, 1},
+                          diffs(List.of("a", "}", "}"),
+                                List.of("a", "}", "x")));
+        assertArrayEquals(new int[] {0, 1, 0, 0, 2, 1, 1, 1},
+                          diffs(List.of("x", "}", "}"),
+                                List.of("}", "y")));
+    }
+
+    @Test
+    public void diffRandomTest() {
+        Random random = new Random(61);
+        for (Diff.Algorithm algorithm : Diff.Algorithm.values()) {
+            for (int t = 0; t < 500; t += 1) {
+                List<String> x = lines(random, random.nextInt(30)),
+                    y = new ArrayList<>(x);
+                for (int i = random.nextInt(4); i >= 0; i -= 1) {
+                    int k = random.nextInt(y.size() + 1);
+                    if (k < y.size() && random.nextBoolean()) {
+                        y.remove(k);
+                    } else {
+                        y.addAll(k, lines(random, 1 + random.nextInt(3)));
+                    }
+                }
+                Diff diff = new Diff();
+                diff.setSequences(x, y);
+                diff.setAlgorithm(algorithm);
+                int[] edits = diff.diffs();
+                assertEquals(y, apply(x, y, edits));
+                int changed = 0;
+                for (int k = 0; k < edits.length; k += 4) {
+                    changed += edits[k + 1] + edits[k + 3];
+                    assertTrue(edits[k + 1] + edits[k + 3] > 0);
+                    assertTrue(k == 0
+                               || edits[k - 4] + edits[k - 3] < edits[k]);
+                }
+                int lls = diff.lls(x.size(), y.size());
+                if (algorithm == Diff.Algorithm.MYERS) {
+                    assertEquals(lls, diff.lls());
+                    assertEquals(x.size() + y.size() - 2 * lls, changed);
+                } else {
+                    assertTrue(diff.lls() <= lls);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void diffHistogramTest() {
+        List<String> x = List.of("int f() {", "}", "", "int g() {", "}"),
+            y = List.of("int g() {", "}", "", "int f() {", "}");
+        Diff diff = new Diff();
+        diff.setSequences(x, y);
+        diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        assertEquals(y, apply(x, y, diff.diffs()));
+        assertArrayEquals(new int[] {3, 0, 2}, diff.commonSubsequence());
+    }
+
+    @Test
+    public void diffLargeTest() {
+        ArrayList<String> x = new ArrayList<>();
+        for (int i = 0; i < 6000; i += 1) {
+            x.add("line" + i);
+        }
+        ArrayList<String> y = new ArrayList<>(x);
+        Collections.shuffle(y, new Random(61));
+        assertEquals(y, apply(x, y, diffs(x, y)));
+    }
+
 }
 
 
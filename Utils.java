@@ -3,6 +3,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -11,14 +12,21 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /** Assorted utilities.
@@ -31,28 +39,145 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Per-thread SHA-1 digester, reset before each use. */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not "
+                                                   + "support SHA-1");
+            }
+        });
+
+    /** Returns this thread's SHA-1 digester, reset and ready for use. */
+    static MessageDigest sha1Digester() {
+        MessageDigest md = SHA1.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns the raw SHA-1 digest of the concatenation of VALS, which
+     *  may be any mixture of byte arrays and Strings.  Callers that keep
+     *  ids as 20-byte keys use this and hex-encode only for output. */
+    static byte[] sha1Bytes(Object... vals) {
+        MessageDigest md = sha1Digester();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        return md.digest();
+    }
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        return toHex(sha1Bytes(vals));
+    }
+
+    /** Size of the buffer used to hash files. */
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
+    /** Per-thread direct buffer reused by sha1Digest(File). */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+        ThreadLocal.withInitial(() ->
+                                ByteBuffer.allocateDirect(HASH_BUFFER_SIZE));
+
+    /** Returns the raw SHA-1 digest of the contents of FILE, reading it
+     *  through a FileChannel in fixed-size chunks so that files of any
+     *  size are hashed without being loaded into memory.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static byte[] sha1Digest(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            MessageDigest md = sha1Digester();
+            ByteBuffer buf = HASH_BUFFER.get();
+            buf.clear();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            return md.digest();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE as a hexadecimal
+     *  numeral. */
+    static String sha1(File file) {
+        return toHex(sha1Digest(file));
+    }
+
+    /** Hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Value of each character as a hexadecimal digit, or -1 for
+     *  characters that are not one, indexed by character. */
+    private static final byte[] HEX_VALUES = new byte[256];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int d = 0; d < HEX_DIGITS.length; d += 1) {
+            HEX_VALUES[HEX_DIGITS[d]] = (byte) d;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[d])] = (byte) d;
+        }
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX.  Throws
+     *  IllegalArgumentException if HEX has an odd length or a character
+     *  that is not a hexadecimal digit. */
+    static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("odd-length hex: " + hex);
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = hexValue(hex.charAt(2 * i)),
+                lo = hexValue(hex.charAt(2 * i + 1));
+            if ((hi | lo) < 0) {
+                throw new IllegalArgumentException("bad hex: " + hex);
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            result[i] = (byte) ((hi << 4) | lo);
         }
+        return result;
+    }
+
+    /** Returns true iff S is a full object id: UID_LENGTH lower-case
+     *  hexadecimal digits. */
+    static boolean isId(String s) {
+        if (s.length() != UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UID_LENGTH; i += 1) {
+            char c = s.charAt(i);
+            if (hexValue(c) < 0 || Character.isUpperCase(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the value of C as a hexadecimal digit, or -1 if it is not
+     *  one. */
+    private static int hexValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -111,16 +236,18 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  either a String or a byte array.  The bytes go to a temporary file
+     *  that is then renamed over FILE, so FILE never holds part of them.
+     *  Throws IllegalArgumentException in case of problems. */
     static void writeContents(File file, Object... contents) {
+        File tmp = tempFor(file);
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
             BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()));
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
@@ -130,10 +257,114 @@ class Utils {
             }
             str.close();
         } catch (IOException | ClassCastException excp) {
+            tmp.delete();
             throw new IllegalArgumentException(excp.getMessage());
         }
+        rename(tmp, file);
     }
 
+    /** Directory holding the files of the repository that are still
+     *  being written. */
+    static final File TEMP = join(new File(System.getProperty("user.dir")),
+                                  ".gitlet", "tmp");
+
+    /** Returns the directory for temporary files that will be renamed
+     *  into DIR: TEMP if there is a repository, and otherwise DIR. */
+    static File tempDir(File dir) {
+        if (!TEMP.getParentFile().isDirectory()) {
+            return dir;
+        }
+        TEMP.mkdir();
+        return TEMP;
+    }
+
+    /** Returns the temporary file into which this process writes FILE's
+     *  new contents.  The name holds the process id and a count, so no two
+     *  writes, in this process or another, use the same one. */
+    static File tempFor(File file) {
+        return new File(tempDir(file.getParentFile()),
+                        "." + file.getName() + "."
+                        + ProcessHandle.current().pid() + "."
+                        + TEMP_COUNT.incrementAndGet() + ".tmp");
+    }
+
+    /** Delete every file left in TEMP.  Only safe while no other command
+     *  can be writing, as when holding the repository lock exclusive. */
+    static void clearTemp() {
+        File[] files = TEMP.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    /** Number of temporary files named so far by this process. */
+    private static final AtomicLong TEMP_COUNT = new AtomicLong();
+
+    /** Rename FROM to TO in one step, replacing TO if it exists, and
+     *  remember TO for the next sync().  Throws IllegalArgumentException
+     *  in case of problems. */
+    static void rename(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            from.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        UNSYNCED.add(to);
+    }
+
+    /** Remember F, a file written in place rather than renamed into
+     *  place, for the next sync(). */
+    static void appended(File f) {
+        UNSYNCED.add(f);
+    }
+
+    /** Force every file renamed into place since the last call, and the
+     *  directories holding them, to disk.  Files and directories are each
+     *  forced once, however often they were written.  Does nothing but
+     *  forget them if the gitlet.fsync property is false. */
+    static void sync() {
+        if (FSYNC) {
+            Set<File> dirs = new HashSet<>();
+            for (File f : UNSYNCED) {
+                force(f);
+                dirs.add(f.getParentFile());
+            }
+            for (File d : dirs) {
+                force(d);
+            }
+        }
+        UNSYNCED.clear();
+    }
+
+    /** Force F, a file or directory, to disk if it still exists.  Some
+     *  systems cannot open a directory to force it; that is ignored. */
+    private static void force(File f) {
+        if (!f.exists()) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                                               StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (!f.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** True unless the gitlet.fsync property is false. */
+    private static final boolean FSYNC =
+        !"false".equals(System.getProperty("gitlet.fsync"));
+
+    /** Files renamed into place or appended to, and not yet forced to
+     *  disk. */
+    private static final Set<File> UNSYNCED = ConcurrentHashMap.newKeySet();
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -150,6 +381,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));